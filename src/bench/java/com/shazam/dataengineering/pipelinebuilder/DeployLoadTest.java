@@ -0,0 +1,356 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.datapipeline.DataPipelineClient;
+import com.amazonaws.services.datapipeline.model.ActivatePipelineRequest;
+import com.amazonaws.services.datapipeline.model.CreatePipelineRequest;
+import com.amazonaws.services.datapipeline.model.PutPipelineDefinitionRequest;
+import com.amazonaws.services.s3.AmazonS3;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Run;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.servlet.RequestDispatcher;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Load test of concurrent deployments through {@link DeploymentAction}, against
+ * the in-memory Data Pipeline and S3 stand-ins.
+ * <p/>
+ * Every job starts with a deployed pipeline. All builds of all jobs are confirmed,
+ * then deployed at the same time, each from its own thread. Reports throughput,
+ * deployment latency, AWS calls and how often deployment log writers waited for
+ * each other. Builds of a job replace the same pipeline, so a job left with more
+ * than one pipeline shows that deployments raced.
+ * <p/>
+ * Options, with their defaults: --jobs 10 --builds 5 --activities 50 --scripts 1
+ * --minLatency 10 --maxLatency 50 (milliseconds per AWS call) --callsPerSecond 0 (no throttling)
+ * --maxConcurrent 4 (limit of the {@link DeploymentQueue})
+ */
+public class DeployLoadTest {
+    private static final String[] OPERATIONS = {
+            AWSMetrics.LIST_PIPELINES, AWSMetrics.QUERY_OBJECTS, AWSMetrics.DESCRIBE_OBJECTS,
+            AWSMetrics.CREATE_PIPELINE, AWSMetrics.VALIDATE_PIPELINE_DEFINITION, AWSMetrics.PUT_PIPELINE_DEFINITION,
+            AWSMetrics.S3_PUT_OBJECT, AWSMetrics.DELETE_PIPELINE, AWSMetrics.ACTIVATE_PIPELINE
+    };
+
+    private final int jobs;
+    private final int builds;
+    private final int scripts;
+    private final SyntheticPipeline pipeline;
+    private final FakeDataPipeline dataPipeline = new FakeDataPipeline();
+    private final FakeS3 s3 = new FakeS3();
+    private final File root;
+
+    public DeployLoadTest(Map<String, Integer> options) throws IOException {
+        this.jobs = options.get("jobs");
+        this.builds = options.get("builds");
+        this.scripts = options.get("scripts");
+        this.pipeline = new SyntheticPipeline(options.get("activities"), 2, 5);
+        this.root = Files.createTempDirectory("deploy-load-test").toFile();
+
+        int minLatency = options.get("minLatency");
+        int maxLatency = options.get("maxLatency");
+        dataPipeline.getConditions().setLatency(minLatency, maxLatency);
+        s3.getConditions().setLatency(minLatency, maxLatency);
+        dataPipeline.getConditions().setCallsPerSecond(options.get("callsPerSecond"));
+        DeploymentQueue.getInstance().setMaxConcurrent(options.get("maxConcurrent"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        DeployLoadTest test = new DeployLoadTest(parseOptions(args));
+        try {
+            test.run();
+        } finally {
+            test.cleanUp();
+        }
+    }
+
+    static Map<String, Integer> parseOptions(String[] args) {
+        HashMap<String, Integer> options = new HashMap<String, Integer>();
+        options.put("jobs", 10);
+        options.put("builds", 5);
+        options.put("activities", 50);
+        options.put("scripts", 1);
+        options.put("minLatency", 10);
+        options.put("maxLatency", 50);
+        options.put("callsPerSecond", 0);
+        options.put("maxConcurrent", DeploymentQueue.DEFAULT_MAX_CONCURRENT);
+
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i].replaceFirst("^--", "");
+            if (!options.containsKey(name) || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Unknown option or missing value: " + args[i]);
+            }
+            options.put(name, Integer.parseInt(args[i + 1]));
+        }
+        return options;
+    }
+
+    public void run() throws Exception {
+        ArrayList<DeploymentAction> actions = new ArrayList<DeploymentAction>();
+        ArrayList<StaplerRequest> requests = new ArrayList<StaplerRequest>();
+        ArrayList<List<String>> views = new ArrayList<List<String>>();
+        for (int job = 0; job < jobs; job++) {
+            String seededId = seedPipeline(job);
+            for (int build = 1; build <= builds; build++) {
+                List<String> buildViews = Collections.synchronizedList(new ArrayList<String>());
+                actions.add(createAction(job, build));
+                requests.add(createRequest(getPipelineFile(job, build), seededId, buildViews));
+                views.add(buildViews);
+            }
+        }
+
+        final StaplerResponse response = mock(StaplerResponse.class);
+        runConcurrently(actions, requests, response, false);
+
+        AWSMetrics.reset();
+        LockRegistry logLocks = DeploymentLog.getLocks();
+        long contendedBefore = logLocks.getContendedCount();
+        long waitBefore = logLocks.getWaitNanos();
+
+        long start = System.nanoTime();
+        long[] latencies = runConcurrently(actions, requests, response, true);
+        long wallNanos = System.nanoTime() - start;
+
+        int succeeded = 0;
+        for (List<String> buildViews : views) {
+            if (!buildViews.isEmpty() && "report".equals(buildViews.get(buildViews.size() - 1))) {
+                succeeded++;
+            }
+        }
+
+        report(latencies, wallNanos, succeeded,
+                logLocks.getContendedCount() - contendedBefore, logLocks.getWaitNanos() - waitBefore);
+    }
+
+    public void cleanUp() throws IOException {
+        Util.deleteRecursive(root);
+    }
+
+    /**
+     * @return Milliseconds taken by each action, in order
+     */
+    private long[] runConcurrently(List<DeploymentAction> actions, final List<StaplerRequest> requests,
+                                   final StaplerResponse response, final boolean deploy) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(actions.size());
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        ArrayList<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (int i = 0; i < actions.size(); i++) {
+            final DeploymentAction action = actions.get(i);
+            final StaplerRequest request = requests.get(i);
+            futures.add(executor.submit(new Callable<Long>() {
+                public Long call() throws Exception {
+                    startSignal.await();
+                    long start = System.nanoTime();
+                    if (deploy) {
+                        action.doDeploy(request, response);
+                    } else {
+                        action.doConfirmProcess(request, response);
+                    }
+                    return (System.nanoTime() - start) / 1000000L;
+                }
+            }));
+        }
+
+        startSignal.countDown();
+        long[] millis = new long[futures.size()];
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    millis[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    System.err.println("Deployment " + i + " failed: " + e.getCause());
+                    millis[i] = -1;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return millis;
+    }
+
+    private void report(long[] latencies, long wallNanos, int succeeded, long contended, long waitNanos) {
+        int deployments = latencies.length;
+        long[] sorted = Arrays.copyOf(latencies, deployments);
+        Arrays.sort(sorted);
+
+        System.out.println(String.format("Deployments:       %d (%d jobs x %d builds), %d succeeded, %d failed",
+                deployments, jobs, builds, succeeded, deployments - succeeded));
+        System.out.println(String.format("Queue limit:       %d at once",
+                DeploymentQueue.getInstance().getMaxConcurrent()));
+        System.out.println(String.format("Wall time:         %d ms", wallNanos / 1000000L));
+        System.out.println(String.format("Throughput:        %.2f deployments/s", deployments * 1e9 / wallNanos));
+        System.out.println(String.format("Deploy latency:    p50 %d ms, p99 %d ms, max %d ms",
+                percentile(sorted, 50), percentile(sorted, 99), sorted[deployments - 1]));
+        System.out.println(String.format("Pipelines per job: %s (1 when deployments of a job do not race)",
+                getPipelinesPerJob()));
+        System.out.println(String.format("Log writes:        %d waited for another writer, %d ms waiting in total",
+                contended, waitNanos / 1000000L));
+        System.out.println("AWS calls:         success / throttled / error");
+        for (String operation : OPERATIONS) {
+            System.out.println(String.format("  %-28s %6d / %6d / %6d", operation,
+                    AWSMetrics.getCount(operation, AWSMetrics.Outcome.SUCCESS),
+                    AWSMetrics.getCount(operation, AWSMetrics.Outcome.THROTTLED),
+                    AWSMetrics.getCount(operation, AWSMetrics.Outcome.ERROR)));
+        }
+    }
+
+    /**
+     * Nearest rank percentile.
+     */
+    static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private List<Integer> getPipelinesPerJob() {
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        for (String pipelineId : dataPipeline.getPipelineIds()) {
+            String name = dataPipeline.getPipelineName(pipelineId);
+            String job = name.substring(0, name.lastIndexOf('-'));
+            counts.put(job, counts.containsKey(job) ? counts.get(job) + 1 : 1);
+        }
+
+        ArrayList<Integer> perJob = new ArrayList<Integer>();
+        for (int job = 0; job < jobs; job++) {
+            String name = getPipelineFile(job, 0);
+            Integer count = counts.get(name.substring(0, name.lastIndexOf('-')));
+            perJob.add(count == null ? 0 : count);
+        }
+        return perJob;
+    }
+
+    /**
+     * The pipeline of an earlier build, with finished attempts for the running task check to page through.
+     */
+    private String seedPipeline(int job) {
+        String name = getPipelineFile(job, 0);
+        String pipelineId = dataPipeline.createPipeline(new CreatePipelineRequest()
+                .withName(name.substring(0, name.lastIndexOf(".json")))
+                .withUniqueId(name)).getPipelineId();
+        dataPipeline.putPipelineDefinition(new PutPipelineDefinitionRequest()
+                .withPipelineId(pipelineId)
+                .withPipelineObjects(new PipelineObject(pipeline.getProcessedJson()).getAWSObjects()));
+        dataPipeline.activatePipeline(new ActivatePipelineRequest().withPipelineId(pipelineId));
+        dataPipeline.addAttempts(pipelineId, "FINISHED", 150);
+        return pipelineId;
+    }
+
+    private DeploymentAction createAction(int job, int number) throws IOException {
+        File jobDir = new File(root, "job" + job);
+        File artifactsDir = new File(jobDir, "builds/" + number + "/archive");
+        File scriptsDir = new File(artifactsDir, "scripts");
+        if (!scriptsDir.mkdirs()) {
+            throw new IOException("Unable to create " + scriptsDir);
+        }
+
+        String pipelineFile = getPipelineFile(job, number);
+        File file = new File(artifactsDir, pipelineFile);
+        Files.write(file.toPath(), pipeline.getProcessedJson().getBytes(StandardCharsets.UTF_8));
+        Run.Artifact artifact = mock(Run.Artifact.class);
+        when(artifact.getFileName()).thenReturn(pipelineFile);
+        when(artifact.getFile()).thenReturn(file);
+
+        HashMap<S3Environment, String> s3Urls = new HashMap<S3Environment, String>();
+        for (int i = 0; i < scripts; i++) {
+            String script = "script" + i + ".sql";
+            Files.write(new File(scriptsDir, script).toPath(), "SELECT 1;".getBytes(StandardCharsets.UTF_8));
+            s3Urls.put(new S3Environment(pipelineFile, script), "s3://load-test/job" + job + "/" + script);
+        }
+
+        AbstractProject project = mock(AbstractProject.class);
+        when(project.getRootDir()).thenReturn(jobDir);
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(project.getName()).thenReturn("loadjob" + job);
+        when(project.getFullName()).thenReturn("loadjob" + job);
+        when(build.getProject()).thenReturn(project);
+        when(build.getNumber()).thenReturn(number);
+        when(build.getArtifactsDir()).thenReturn(artifactsDir);
+        when(build.getArtifacts()).thenReturn(Arrays.asList(artifact));
+
+        BasicAWSCredentials credentials = new BasicAWSCredentials("account", "fake");
+        return new DeploymentAction(build, s3Urls, credentials) {
+            @Override
+            DataPipelineClient createDataPipelineClient() {
+                return dataPipeline;
+            }
+
+            @Override
+            AmazonS3 createS3Client() {
+                return s3;
+            }
+        };
+    }
+
+    /**
+     * @param pipelineToRemove Pipeline shown on the confirm page, as the deploy form posts it back
+     */
+    private StaplerRequest createRequest(String pipelineFile, String pipelineToRemove, final List<String> views)
+            throws Exception {
+        JSONObject form = new JSONObject();
+        form.put("pipeline", pipelineFile);
+        form.put("pipelineToRemove", pipelineToRemove);
+        // Tomorrow, so that no backfill warning is added
+        form.put("scheduleDate", new SimpleDateFormat(PipelineObject.PIPELINE_DATE_FORMAT)
+                .format(new Date(System.currentTimeMillis() + 24 * 3600 * 1000L)));
+
+        StaplerRequest request = mock(StaplerRequest.class);
+        final RequestDispatcher dispatcher = mock(RequestDispatcher.class);
+        when(request.getSubmittedForm()).thenReturn(form);
+        when(request.getView(any(), anyString())).thenAnswer(new Answer<RequestDispatcher>() {
+            public RequestDispatcher answer(InvocationOnMock invocation) {
+                views.add((String) invocation.getArguments()[1]);
+                return dispatcher;
+            }
+        });
+        return request;
+    }
+
+    private static String getPipelineFile(int job, int build) {
+        return String.format(PipelineProcessor.FILE_NAME_FORMAT, "d", 1, "loadjob" + job, build);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of writing and reading deployment logs, as done by every deployment and every page view.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DeploymentLogBenchmark {
+    @Param({"10", "100", "1000"})
+    public int entries;
+
+    private DeploymentLog log;
+    private String serializedLog;
+    private File logFile;
+    private Deployment deployment;
+
+    @Setup
+    public void setUp() {
+        log = new DeploymentLog();
+        for (int i = 0; i < entries; i++) {
+            log.add(createDeployment(i));
+        }
+        serializedLog = log.serialize();
+        deployment = createDeployment(entries);
+    }
+
+    /**
+     * Appending grows the log, so every iteration starts again from a log of the given size.
+     */
+    @Setup(Level.Iteration)
+    public void setUpFile() throws IOException {
+        logFile = File.createTempFile("deployment-benchmark", ".log");
+        for (int i = 0; i < entries; i++) {
+            DeploymentLog.append(logFile, createDeployment(i));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownFile() {
+        logFile.delete();
+    }
+
+    private static Deployment createDeployment(int i) {
+        List<String> messages = new ArrayList<String>(Arrays.asList(
+                "[INFO] Validating pipeline", "[INFO] Uploading pipeline", "[INFO] Activating pipeline df-" + i));
+        return new Deployment("user", i % 10 != 0, "df-" + i, new Date(1420070400000L + i * 60000L), messages);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return log.serialize();
+    }
+
+    @Benchmark
+    public List<Deployment> parse() {
+        return new DeploymentLog(serializedLog).getAll();
+    }
+
+    @Benchmark
+    public List<Deployment> readLatestPage() throws IOException {
+        return DeploymentLog.readLatest(logFile, 0, DeploymentAction.DEPLOYMENTS_PER_PAGE);
+    }
+
+    @Benchmark
+    public List<Deployment> readAll() throws IOException {
+        return DeploymentLog.readLatest(logFile, 0, entries);
+    }
+
+    @Benchmark
+    public List<Deployment> appendAndReadLatest() throws IOException {
+        DeploymentLog.append(logFile, deployment);
+        return DeploymentLog.readLatest(logFile, 0, 1);
+    }
+}
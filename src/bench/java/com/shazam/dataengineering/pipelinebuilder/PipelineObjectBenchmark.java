@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reading a processed pipeline, as done by every build and deployment.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PipelineObjectBenchmark {
+    @Param({"10", "100", "1000"})
+    public int activities;
+
+    private String json;
+    private PipelineObject pipeline;
+
+    @Setup
+    public void setUp() {
+        json = new SyntheticPipeline(activities, 5, 10).getProcessedJson();
+        pipeline = new PipelineObject(json);
+        if (!pipeline.isValid()) {
+            throw new IllegalStateException("Synthetic pipeline is not valid JSON", pipeline.getError());
+        }
+    }
+
+    @Benchmark
+    public PipelineObject parse() {
+        return new PipelineObject(json);
+    }
+
+    @Benchmark
+    public List<com.amazonaws.services.datapipeline.model.PipelineObject> getAWSObjects() {
+        return pipeline.getAWSObjects();
+    }
+
+    @Benchmark
+    public PipelineObject setScheduleDate() {
+        pipeline.setScheduleDate("2015-06-01T00:00:00");
+        return pipeline;
+    }
+
+    @Benchmark
+    public String getScheduleDate() {
+        return pipeline.getScheduleDate();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the build step processing of a pipeline definition.
+ * <p/>
+ * The stages are private, so like {@link PipelineProcessorTest} they are called
+ * through reflection. The methods are looked up once, which keeps the overhead
+ * small compared to the regular expressions they run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class PipelineProcessorBenchmark {
+    @Param({"10", "100", "1000"})
+    public int activities;
+
+    @Param({"5"})
+    public int keys;
+
+    @Param({"10"})
+    public int sqlLines;
+
+    @Param({"2"})
+    public int environments;
+
+    private File directory;
+    private FilePath pipelineFile;
+    private PipelineProcessor processor;
+    private Environment environment;
+    private Method performInlining;
+    private Method performSubstitutions;
+    private Method warnForUnreplacedKeys;
+    private String json;
+    private String inlinedJson;
+    private String substitutedJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticPipeline pipeline = new SyntheticPipeline(activities, keys, sqlLines);
+        json = pipeline.getJson();
+
+        directory = File.createTempFile("pipeline-benchmark", "");
+        directory.delete();
+        File artifacts = new File(directory, "artifacts");
+        artifacts.mkdirs();
+        File input = new File(directory, "pipeline.json");
+        pipelineFile = new FilePath(input);
+        pipelineFile.write(json, "UTF-8");
+
+        AbstractProject project = Mockito.mock(AbstractProject.class);
+        Mockito.when(project.getName()).thenReturn("benchmark");
+        AbstractBuild build = Mockito.mock(AbstractBuild.class);
+        Mockito.when(build.getProject()).thenReturn(project);
+        Mockito.when(build.getNumber()).thenReturn(1);
+        Mockito.when(build.getArtifactsDir()).thenReturn(artifacts);
+        BuildListener listener = Mockito.mock(BuildListener.class);
+        Mockito.when(listener.getLogger()).thenReturn(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+
+        processor = new PipelineProcessor(build, null, listener);
+        Environment[] environmentArray = new Environment[environments];
+        for (int i = 0; i < environments; i++) {
+            environmentArray[i] = i % 2 == 0
+                    ? new ProductionEnvironment("production", pipeline.getConfigParams())
+                    : new DevelopmentEnvironment("development", pipeline.getConfigParams());
+        }
+        processor.setEnvironments(environmentArray);
+        environment = environmentArray[0];
+
+        performInlining = PipelineProcessor.class.getDeclaredMethod("performInlining", String.class);
+        performInlining.setAccessible(true);
+        performSubstitutions = PipelineProcessor.class.getDeclaredMethod("performSubstitutions",
+                String.class, String.class, Environment.class);
+        performSubstitutions.setAccessible(true);
+        warnForUnreplacedKeys = PipelineProcessor.class.getDeclaredMethod("warnForUnreplacedKeys", String.class);
+        warnForUnreplacedKeys.setAccessible(true);
+
+        inlinedJson = inlining();
+        substitutedJson = substitution();
+        if (!processor.process(pipelineFile)) {
+            throw new IllegalStateException("Synthetic pipeline failed to process");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        new FilePath(directory).deleteRecursive();
+    }
+
+    @Benchmark
+    public String inlining() throws Exception {
+        return (String) performInlining.invoke(processor, json);
+    }
+
+    @Benchmark
+    public String substitution() throws Exception {
+        return (String) performSubstitutions.invoke(processor, inlinedJson, "p1-benchmark-1.json", environment);
+    }
+
+    @Benchmark
+    public Object unreplacedTokens() throws Exception {
+        return warnForUnreplacedKeys.invoke(processor, substitutedJson);
+    }
+
+    /**
+     * Everything the build step does for every environment: inlining, substitution,
+     * validation, analysis and graphs, including writing the artifacts.
+     */
+    @Benchmark
+    public boolean process() {
+        return processor.process(pipelineFile);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+/**
+ * Generates pipeline definitions of a given size for the benchmarks.
+ * <p/>
+ * The pipeline has a default object, a schedule and a database, followed by
+ * SQL activities that each depend on an earlier activity. Every activity has
+ * the requested number of fields with substitution tokens, a triple-quoted
+ * SQL script and one token with no substitution.
+ */
+public class SyntheticPipeline {
+    private final int activities;
+    private final int keys;
+    private final int sqlLines;
+
+    /**
+     * @param activities Number of activities
+     * @param keys       Number of substituted fields per activity
+     * @param sqlLines   Number of lines in the script of every activity
+     */
+    public SyntheticPipeline(int activities, int keys, int sqlLines) {
+        this.activities = activities;
+        this.keys = keys;
+        this.sqlLines = sqlLines;
+    }
+
+    /**
+     * @return Pipeline definition, as written by users
+     */
+    public String getJson() {
+        return generate(false);
+    }
+
+    /**
+     * @return Pipeline definition as the build step leaves it, with scripts inlined and tokens substituted
+     */
+    public String getProcessedJson() {
+        return generate(true);
+    }
+
+    private String generate(boolean processed) {
+        String database = processed ? "Redshift DB" : "${database}";
+        String cluster = processed ? "cluster-1" : "${cluster}";
+        String schema = processed ? "public" : "${schema}";
+        String quote = processed ? "\"" : "\"\"\"";
+        String lineBreak = processed ? "" : "\n";
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"objects\": [\n");
+        json.append("    {\n      \"id\": \"Default\",\n      \"scheduleType\": \"cron\",\n")
+                .append("      \"failureAndRerunMode\": \"CASCADE\",\n")
+                .append("      \"schedule\": {\n        \"ref\": \"Schedule_0\"\n      }\n    },\n");
+        json.append("    {\n      \"id\": \"Schedule_0\",\n      \"name\": \"Daily\",\n      \"type\": \"Schedule\",\n")
+                .append("      \"startDateTime\": \"2015-01-01T00:00:00\",\n      \"period\": \"1 Day\"\n    },\n");
+        json.append("    {\n      \"id\": \"Database_0\",\n      \"name\": \"").append(database).append("\",\n")
+                .append("      \"type\": \"RedshiftDatabase\",\n      \"clusterId\": \"").append(cluster).append("\"\n    }");
+
+        for (int i = 0; i < activities; i++) {
+            json.append(",\n    {\n");
+            json.append("      \"id\": \"Activity_").append(i).append("\",\n");
+            json.append("      \"name\": \"Activity ").append(i).append("\",\n");
+            json.append("      \"type\": \"SqlActivity\",\n");
+            json.append("      \"schedule\": {\n        \"ref\": \"Schedule_0\"\n      },\n");
+            json.append("      \"database\": {\n        \"ref\": \"Database_0\"\n      },\n");
+            if (i > 0) {
+                // Binary tree of dependencies, so that depth grows with the logarithm of the size
+                json.append("      \"dependsOn\": {\n        \"ref\": \"Activity_").append((i - 1) / 2).append("\"\n      },\n");
+            }
+            for (int key = 0; key < keys; key++) {
+                json.append("      \"field").append(key).append("\": \"");
+                if (processed) {
+                    json.append("value").append(key);
+                } else {
+                    json.append("${key").append(key).append('}');
+                }
+                json.append("\",\n");
+            }
+            json.append("      \"comment\": \"${unreplaced").append(i).append("}\",\n");
+            json.append("      \"script\": ").append(quote);
+            for (int line = 0; line < sqlLines; line++) {
+                json.append(lineBreak).append("        SELECT column").append(line).append(" FROM ")
+                        .append(schema).append(".table").append(i).append(" WHERE value = 'text';");
+            }
+            json.append(lineBreak).append("      ").append(quote).append("\n    }");
+        }
+
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * @return Environment parameters substituting every token except the unreplaced ones
+     */
+    public String getConfigParams() {
+        StringBuilder params = new StringBuilder();
+        params.append("database: Redshift DB\n");
+        params.append("cluster: cluster-1\n");
+        params.append("schema: public\n");
+        for (int key = 0; key < keys; key++) {
+            params.append("key").append(key).append(": value").append(key).append('\n');
+        }
+        return params.toString();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.AmazonServiceException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts and latencies of the AWS API calls made by {@link AWSProxy}, by operation and outcome.
+ * <p/>
+ * Every call ends in one of three outcomes: success, throttled (rejected by
+ * the API rate limits) or error. Latencies are kept in fixed histogram buckets,
+ * so recording a call is a handful of atomic increments and never allocates
+ * once an operation has been seen.
+ * <p/>
+ * A thread can also count the calls it makes itself, which is how the calls of
+ * a single deployment are attributed to it.
+ */
+public class AWSMetrics {
+    public static final String LIST_PIPELINES = "listPipelines";
+    public static final String CREATE_PIPELINE = "createPipeline";
+    public static final String VALIDATE_PIPELINE_DEFINITION = "validatePipelineDefinition";
+    public static final String PUT_PIPELINE_DEFINITION = "putPipelineDefinition";
+    public static final String ACTIVATE_PIPELINE = "activatePipeline";
+    public static final String DELETE_PIPELINE = "deletePipeline";
+    public static final String QUERY_OBJECTS = "queryObjects";
+    public static final String DESCRIBE_OBJECTS = "describeObjects";
+    public static final String DESCRIBE_PIPELINES = "describePipelines";
+    public static final String S3_PUT_OBJECT = "s3PutObject";
+
+    public enum Outcome {
+        SUCCESS, THROTTLED, ERROR
+    }
+
+    // Upper bounds of the latency buckets in milliseconds, the last bucket counts everything slower
+    static final long[] BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private static final Set<String> THROTTLING_ERROR_CODES = new HashSet<String>(Arrays.asList(
+            "Throttling", "ThrottlingException", "RequestLimitExceeded", "TooManyRequestsException",
+            "ProvisionedThroughputExceededException", "RequestThrottled", "SlowDown"));
+
+    private static final ConcurrentMap<String, Metric> METRICS = new ConcurrentHashMap<String, Metric>();
+    private static volatile long since = System.currentTimeMillis();
+    // Calls made by the threads counting them, by operation
+    private static final ThreadLocal<Map<String, Long>> THREAD_CALLS = new ThreadLocal<Map<String, Long>>();
+
+    /**
+     * A single AWS API call.
+     */
+    public interface Operation<T> {
+        T call();
+    }
+
+    /**
+     * Make a call, recording its outcome and latency. Exceptions are rethrown unchanged.
+     */
+    public static <T> T timed(String operation, Operation<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            record(operation, Outcome.SUCCESS, getMillisSince(start));
+            return result;
+        } catch (RuntimeException e) {
+            record(operation, isThrottling(e) ? Outcome.THROTTLED : Outcome.ERROR, getMillisSince(start));
+            throw e;
+        } finally {
+            countForThread(operation);
+        }
+    }
+
+    /**
+     * Count the calls made by the current thread from now on, until {@link #stopCounting()}.
+     */
+    public static void startCounting() {
+        THREAD_CALLS.set(new TreeMap<String, Long>());
+    }
+
+    /**
+     * @return Calls made by the current thread since {@link #startCounting()}, by operation
+     */
+    public static Map<String, Long> stopCounting() {
+        Map<String, Long> calls = THREAD_CALLS.get();
+        THREAD_CALLS.remove();
+        return calls == null ? new TreeMap<String, Long>() : calls;
+    }
+
+    private static void countForThread(String operation) {
+        Map<String, Long> calls = THREAD_CALLS.get();
+        if (calls != null) {
+            Long previous = calls.get(operation);
+            calls.put(operation, previous == null ? 1L : previous + 1L);
+        }
+    }
+
+    private static long getMillisSince(long start) {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+    static void record(String operation, Outcome outcome, long millis) {
+        String key = operation + "/" + outcome;
+        Metric metric = METRICS.get(key);
+        if (metric == null) {
+            METRICS.putIfAbsent(key, new Metric());
+            metric = METRICS.get(key);
+        }
+        metric.add(millis);
+    }
+
+    static boolean isThrottling(RuntimeException e) {
+        return e instanceof AmazonServiceException
+                && (THROTTLING_ERROR_CODES.contains(((AmazonServiceException) e).getErrorCode())
+                || ((AmazonServiceException) e).getStatusCode() == 429);
+    }
+
+    /**
+     * @return Number of calls of the operation that ended with the outcome
+     */
+    public static long getCount(String operation, Outcome outcome) {
+        Metric metric = METRICS.get(operation + "/" + outcome);
+        return metric == null ? 0 : metric.count.get();
+    }
+
+    public static void reset() {
+        METRICS.clear();
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * @return All metrics as JSON, by operation and then by outcome
+     */
+    public static JSONObject toJSON() {
+        // Sorted, so that the output is stable between requests
+        TreeMap<String, JSONObject> operations = new TreeMap<String, JSONObject>();
+        for (Map.Entry<String, Metric> entry : METRICS.entrySet()) {
+            String[] key = entry.getKey().split("/");
+            JSONObject outcomes = operations.get(key[0]);
+            if (outcomes == null) {
+                outcomes = new JSONObject();
+                operations.put(key[0], outcomes);
+            }
+            outcomes.put(key[1].toLowerCase(), entry.getValue().toJSON());
+        }
+
+        JSONArray buckets = new JSONArray();
+        for (long bucket : BUCKETS) {
+            buckets.add(bucket);
+        }
+
+        JSONObject operationObject = new JSONObject();
+        operationObject.putAll(operations);
+        JSONObject json = new JSONObject();
+        json.put("since", since);
+        json.put("bucketsMillis", buckets);
+        json.put("operations", operationObject);
+        return json;
+    }
+
+    private static class Metric {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+
+        private void add(long millis) {
+            count.incrementAndGet();
+            totalMillis.addAndGet(millis);
+            long max = maxMillis.get();
+            while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+                max = maxMillis.get();
+            }
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+                bucket++;
+            }
+            histogram.incrementAndGet(bucket);
+        }
+
+        private JSONObject toJSON() {
+            JSONArray counts = new JSONArray();
+            for (int i = 0; i < histogram.length(); i++) {
+                counts.add(histogram.get(i));
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("count", count.get());
+            json.put("totalMillis", totalMillis.get());
+            json.put("maxMillis", maxMillis.get());
+            json.put("histogram", counts);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+
+/**
+ * Jenkins wide JSON endpoint with the AWS API call metrics, at /pipeline-aws-metrics/.
+ * Only administrators can read it.
+ *
+ * @see AWSMetrics
+ */
+@Extension
+public class AWSMetricsAction implements RootAction {
+    public String getIconFileName() {
+        // Not shown in the side panel, the endpoint is meant for scripts
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Pipeline AWS Metrics";
+    }
+
+    public String getUrlName() {
+        return "pipeline-aws-metrics";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse resp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        resp.setContentType("application/json;charset=UTF-8");
+        resp.getWriter().print(AWSMetrics.toJSON().toJSONString());
+    }
+}
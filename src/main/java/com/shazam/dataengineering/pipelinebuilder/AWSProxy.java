@@ -23,6 +23,8 @@ import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectResult;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.regex.Matcher;
@@ -31,23 +33,33 @@ import java.util.regex.Pattern;
 /**
  * Proxy class for the AWS SDK
  * Simplifies most of the interactions, wraps exceptions, helps in testing.
+ * Every API call is counted and timed in {@link AWSMetrics}.
  */
 public class AWSProxy {
-    private DataPipelineClient client;
+    // Most pipelines DescribePipelines accepts in one request
+    public static final int DESCRIBE_PIPELINES_BATCH_SIZE = 25;
+    // Most objects DescribeObjects accepts in one request
+    public static final int DESCRIBE_OBJECTS_BATCH_SIZE = 25;
+
+    private final DataPipelineClient client;
 
     public AWSProxy(DataPipelineClient dataPipelineClient) {
         this.client = dataPipelineClient;
     }
 
-    public static boolean uploadFileToS3Url(AmazonS3 client, String url, File file) throws DeploymentException {
+    public static boolean uploadFileToS3Url(final AmazonS3 client, String url, File file) throws DeploymentException {
         try {
             Pattern pattern = Pattern.compile("://([^/]+)/(.*)");
             Matcher matcher = pattern.matcher(url);
             if (matcher.find()) {
                 String bucketName = matcher.group(1);
                 String key = matcher.group(2);
-                PutObjectRequest putRequest = new PutObjectRequest(bucketName, key, file);
-                PutObjectResult result = client.putObject(putRequest);
+                final PutObjectRequest putRequest = new PutObjectRequest(bucketName, key, file);
+                AWSMetrics.timed(AWSMetrics.S3_PUT_OBJECT, new AWSMetrics.Operation<PutObjectResult>() {
+                    public PutObjectResult call() {
+                        return client.putObject(putRequest);
+                    }
+                });
                 return true;
             } else {
                 return false;
@@ -59,8 +71,13 @@ public class AWSProxy {
 
     public boolean removePipeline(String pipelineId) {
         try {
-            DeletePipelineRequest request = new DeletePipelineRequest().withPipelineId(pipelineId);
-            client.deletePipeline(request);
+            final DeletePipelineRequest request = new DeletePipelineRequest().withPipelineId(pipelineId);
+            AWSMetrics.timed(AWSMetrics.DELETE_PIPELINE, new AWSMetrics.Operation<Void>() {
+                public Void call() {
+                    client.deletePipeline(request);
+                    return null;
+                }
+            });
 
             return true;
         } catch (AmazonClientException e) {
@@ -74,10 +91,15 @@ public class AWSProxy {
 
     public String createPipeline(String name, String description) throws DeploymentException {
         try {
-            CreatePipelineRequest request = new CreatePipelineRequest()
+            final CreatePipelineRequest request = new CreatePipelineRequest()
                     .withName(name).withDescription(description)
                     .withUniqueId(UUID.randomUUID().toString()); // TODO persist through retries?
-            CreatePipelineResult result = client.createPipeline(request);
+            CreatePipelineResult result = AWSMetrics.timed(AWSMetrics.CREATE_PIPELINE,
+                    new AWSMetrics.Operation<CreatePipelineResult>() {
+                        public CreatePipelineResult call() {
+                            return client.createPipeline(request);
+                        }
+                    });
             return result.getPipelineId();
         } catch (RuntimeException e) {
             throw new DeploymentException(e);
@@ -87,9 +109,14 @@ public class AWSProxy {
     public ValidatePipelineDefinitionResult validatePipeline(String pipelineId, PipelineObject pipeline)
             throws DeploymentException {
         try {
-            ValidatePipelineDefinitionRequest request = new ValidatePipelineDefinitionRequest()
+            final ValidatePipelineDefinitionRequest request = new ValidatePipelineDefinitionRequest()
                     .withPipelineId(pipelineId).withPipelineObjects(pipeline.getAWSObjects());
-            return client.validatePipelineDefinition(request);
+            return AWSMetrics.timed(AWSMetrics.VALIDATE_PIPELINE_DEFINITION,
+                    new AWSMetrics.Operation<ValidatePipelineDefinitionResult>() {
+                        public ValidatePipelineDefinitionResult call() {
+                            return client.validatePipelineDefinition(request);
+                        }
+                    });
         } catch (RuntimeException e) {
             throw new DeploymentException(e);
         }
@@ -97,9 +124,14 @@ public class AWSProxy {
 
     public boolean putPipeline(String pipelineId, PipelineObject pipeline) throws DeploymentException {
         try {
-            PutPipelineDefinitionRequest request = new PutPipelineDefinitionRequest()
+            final PutPipelineDefinitionRequest request = new PutPipelineDefinitionRequest()
                     .withPipelineId(pipelineId).withPipelineObjects(pipeline.getAWSObjects());
-            PutPipelineDefinitionResult result = client.putPipelineDefinition(request);
+            PutPipelineDefinitionResult result = AWSMetrics.timed(AWSMetrics.PUT_PIPELINE_DEFINITION,
+                    new AWSMetrics.Operation<PutPipelineDefinitionResult>() {
+                        public PutPipelineDefinitionResult call() {
+                            return client.putPipelineDefinition(request);
+                        }
+                    });
             return !result.isErrored();
         } catch (RuntimeException e) {
             throw new DeploymentException(e);
@@ -108,18 +140,26 @@ public class AWSProxy {
 
     public void activatePipeline(String pipelineId) throws DeploymentException {
         try {
-            ActivatePipelineRequest request = new ActivatePipelineRequest().withPipelineId(pipelineId);
-            client.activatePipeline(request);
+            final ActivatePipelineRequest request = new ActivatePipelineRequest().withPipelineId(pipelineId);
+            AWSMetrics.timed(AWSMetrics.ACTIVATE_PIPELINE, new AWSMetrics.Operation<ActivatePipelineResult>() {
+                public ActivatePipelineResult call() {
+                    return client.activatePipeline(request);
+                }
+            });
         } catch (RuntimeException e) {
             throw new DeploymentException(e);
         }
     }
 
     public DescribeObjectsResult describeTasks(String pipelineId, List<String> objectIds) {
-        DescribeObjectsRequest request = new DescribeObjectsRequest()
+        final DescribeObjectsRequest request = new DescribeObjectsRequest()
                 .withPipelineId(pipelineId)
                 .withObjectIds(objectIds);
-        return client.describeObjects(request);
+        return AWSMetrics.timed(AWSMetrics.DESCRIBE_OBJECTS, new AWSMetrics.Operation<DescribeObjectsResult>() {
+            public DescribeObjectsResult call() {
+                return client.describeObjects(request);
+            }
+        });
     }
 
     public boolean hasRunningTasks(String pipelineId) {
@@ -127,22 +167,32 @@ public class AWSProxy {
     }
 
     public boolean hasRunningTasks(String pipelineId, String marker) {
-        QueryObjectsRequest request = new QueryObjectsRequest()
+        final QueryObjectsRequest request = new QueryObjectsRequest()
                 .withSphere("ATTEMPT")
                 .withPipelineId(pipelineId);
         if (marker != null) {
             request.setMarker(marker);
         }
 
-        QueryObjectsResult queryResult = client.queryObjects(request);
+        QueryObjectsResult queryResult = AWSMetrics.timed(AWSMetrics.QUERY_OBJECTS,
+                new AWSMetrics.Operation<QueryObjectsResult>() {
+                    public QueryObjectsResult call() {
+                        return client.queryObjects(request);
+                    }
+                });
 
-        DescribeObjectsResult describeResult = describeTasks(pipelineId, queryResult.getIds());
-        List<com.amazonaws.services.datapipeline.model.PipelineObject> tasks = describeResult.getPipelineObjects();
-        for (com.amazonaws.services.datapipeline.model.PipelineObject task : tasks) {
-            for (Field field : task.getFields()) {
-                // Is task running?
-                if (field.getKey().equals("@status") && field.getStringValue().equals("RUNNING")) {
-                    return true;
+        // A page of attempts can hold more objects than DescribeObjects accepts at once
+        List<String> ids = queryResult.getIds();
+        for (int start = 0; start < ids.size(); start += DESCRIBE_OBJECTS_BATCH_SIZE) {
+            List<String> batch = ids.subList(start, Math.min(start + DESCRIBE_OBJECTS_BATCH_SIZE, ids.size()));
+            DescribeObjectsResult describeResult = describeTasks(pipelineId, batch);
+            List<com.amazonaws.services.datapipeline.model.PipelineObject> tasks = describeResult.getPipelineObjects();
+            for (com.amazonaws.services.datapipeline.model.PipelineObject task : tasks) {
+                for (Field field : task.getFields()) {
+                    // Is task running?
+                    if (field.getKey().equals("@status") && field.getStringValue().equals("RUNNING")) {
+                        return true;
+                    }
                 }
             }
         }
@@ -160,12 +210,17 @@ public class AWSProxy {
 
     public String getPipelineId(String nameRegex, String marker) throws DeploymentException {
         try {
-            ListPipelinesRequest request = new ListPipelinesRequest();
+            final ListPipelinesRequest request = new ListPipelinesRequest();
             if (marker != null) {
                 request.setMarker(marker);
             }
 
-            ListPipelinesResult pipelineList = client.listPipelines(request);
+            ListPipelinesResult pipelineList = AWSMetrics.timed(AWSMetrics.LIST_PIPELINES,
+                    new AWSMetrics.Operation<ListPipelinesResult>() {
+                        public ListPipelinesResult call() {
+                            return client.listPipelines(request);
+                        }
+                    });
             for (PipelineIdName pipeline : pipelineList.getPipelineIdList()) {
                 if (pipeline.getName().matches(nameRegex)) {
                     return pipeline.getId();
@@ -182,4 +237,55 @@ public class AWSProxy {
         }
     }
 
+    /**
+     * Describe pipelines in as few requests as the API allows.
+     * <p/>
+     * A whole batch fails if any of its pipelines is gone, in which case
+     * the pipelines of that batch are described one by one instead.
+     *
+     * @return Descriptions of the pipelines that still exist
+     * @throws DeploymentException
+     */
+    public List<PipelineDescription> describePipelines(List<String> pipelineIds) throws DeploymentException {
+        try {
+            ArrayList<PipelineDescription> descriptions = new ArrayList<PipelineDescription>();
+            for (int start = 0; start < pipelineIds.size(); start += DESCRIBE_PIPELINES_BATCH_SIZE) {
+                List<String> batch = pipelineIds.subList(
+                        start, Math.min(start + DESCRIBE_PIPELINES_BATCH_SIZE, pipelineIds.size()));
+                try {
+                    descriptions.addAll(describePipelineBatch(batch));
+                } catch (PipelineNotFoundException e) {
+                    describePipelinesSeparately(batch, descriptions);
+                } catch (PipelineDeletedException e) {
+                    describePipelinesSeparately(batch, descriptions);
+                }
+            }
+            return descriptions;
+        } catch (RuntimeException e) {
+            throw new DeploymentException(e);
+        }
+    }
+
+    private void describePipelinesSeparately(List<String> pipelineIds, List<PipelineDescription> descriptions) {
+        for (String pipelineId : pipelineIds) {
+            try {
+                descriptions.addAll(describePipelineBatch(Collections.singletonList(pipelineId)));
+            } catch (PipelineNotFoundException e) {
+                // Removed since it was deployed
+            } catch (PipelineDeletedException e) {
+                // Removed since it was deployed
+            }
+        }
+    }
+
+    private List<PipelineDescription> describePipelineBatch(List<String> pipelineIds) {
+        final DescribePipelinesRequest request = new DescribePipelinesRequest().withPipelineIds(pipelineIds);
+        List<PipelineDescription> descriptions = AWSMetrics.timed(AWSMetrics.DESCRIBE_PIPELINES,
+                new AWSMetrics.Operation<DescribePipelinesResult>() {
+                    public DescribePipelinesResult call() {
+                        return client.describePipelines(request);
+                    }
+                }).getPipelineDescriptionList();
+        return descriptions == null ? Collections.<PipelineDescription>emptyList() : descriptions;
+    }
 }
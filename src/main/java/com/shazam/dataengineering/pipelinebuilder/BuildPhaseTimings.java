@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time spent in each phase of processing a pipeline for one environment.
+ * <p/>
+ * Phases are exclusive: time spent resolving scripts is not counted again in
+ * the substitution that triggered it. Written to the build log and next to
+ * the pipeline as an artifact, so slow builds can be diagnosed afterwards.
+ */
+public class BuildPhaseTimings {
+    public static final String ARTIFACT_SUFFIX = "-metrics.json";
+
+    public static final String READ = "read";
+    public static final String INLINE = "inline";
+    public static final String SUBSTITUTE = "substitute";
+    public static final String WORKSPACE_SCAN = "scriptWorkspaceScan";
+    public static final String UPSTREAM_SEARCH = "scriptUpstreamSearch";
+    public static final String VALIDATE = "validate";
+    public static final String WRITE = "write";
+    public static final String ANALYSIS = "analysis";
+    public static final String DOT_EXPORT = "dotExport";
+    public static final String RENDER = "render";
+
+    private final LinkedHashMap<String, Long> nanos = new LinkedHashMap<String, Long>();
+
+    /**
+     * Add the time since start to the phase.
+     *
+     * @param start Start of the phase, from {@link System#nanoTime()}
+     */
+    public void add(String phase, long start) {
+        addNanos(phase, System.nanoTime() - start);
+    }
+
+    public void addNanos(String phase, long phaseNanos) {
+        Long previous = nanos.get(phase);
+        nanos.put(phase, previous == null ? phaseNanos : previous + phaseNanos);
+    }
+
+    public long getNanos(String phase) {
+        Long phaseNanos = nanos.get(phase);
+        return phaseNanos == null ? 0 : phaseNanos;
+    }
+
+    /**
+     * @return Milliseconds spent in each phase, in the order the phases first ran
+     */
+    public Map<String, Long> getMillis() {
+        LinkedHashMap<String, Long> millis = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> phase : nanos.entrySet()) {
+            millis.put(phase.getKey(), phase.getValue() / 1000000L);
+        }
+        return millis;
+    }
+
+    public long getTotalMillis() {
+        long total = 0;
+        for (Long phaseNanos : nanos.values()) {
+            total += phaseNanos;
+        }
+        return total / 1000000L;
+    }
+
+    public String toJSONString() {
+        // An array rather than an object, to keep the order of the phases
+        JSONArray phases = new JSONArray();
+        for (Map.Entry<String, Long> phase : getMillis().entrySet()) {
+            JSONObject phaseObject = new JSONObject();
+            phaseObject.put("phase", phase.getKey());
+            phaseObject.put("millis", phase.getValue());
+            phases.add(phaseObject);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("phases", phases);
+        json.put("totalMillis", getTotalMillis());
+        return json.toJSONString();
+    }
+
+    /**
+     * @return Phases for the build log, e.g. "read 2 ms, inline 15 ms, total 17 ms"
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> phase : getMillis().entrySet()) {
+            builder.append(phase.getKey()).append(' ').append(phase.getValue()).append(" ms, ");
+        }
+        return builder.append("total ").append(getTotalMillis()).append(" ms").toString();
+    }
+}
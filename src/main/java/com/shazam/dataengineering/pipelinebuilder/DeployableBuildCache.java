@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * In-memory record of whether the last build of each job can be deployed, and of its last deployment.
+ * <p/>
+ * Kept up to date as builds start, complete and are deleted, so that list views
+ * can show the deploy button without loading build records from disk. A job is
+ * only looked up in its build history the first time it is seen after a restart.
+ * The last deployment is read from the job index once, and again after each new deployment.
+ * Jobs are weak keys, so renamed jobs keep their entry and deleted ones drop out.
+ */
+public class DeployableBuildCache {
+    public static final int NOT_DEPLOYABLE = -1;
+
+    private static final Map<Job, Integer> BUILDS = Collections.synchronizedMap(new WeakHashMap<Job, Integer>());
+    // Empty for jobs that haven't been deployed
+    private static final Map<Job, List<Deployment>> LAST_DEPLOYMENTS = new WeakHashMap<Job, List<Deployment>>();
+
+    /**
+     * @return Number of the last build if it has a pipeline to deploy, otherwise {@link #NOT_DEPLOYABLE}
+     */
+    public static int getDeployableBuildNumber(Job job) {
+        Integer number = BUILDS.get(job);
+        if (number == null) {
+            number = getDeployableBuildNumber(job.getLastBuild());
+            BUILDS.put(job, number);
+        }
+        return number;
+    }
+
+    /**
+     * @return Most recent deployment of the job, successful or not, or null if it hasn't been deployed
+     */
+    public static Deployment getLastDeployment(Job job) {
+        // Read under the lock, so that a deployment recorded meanwhile can't be overwritten by an older read
+        synchronized (LAST_DEPLOYMENTS) {
+            List<Deployment> last = LAST_DEPLOYMENTS.get(job);
+            if (last == null) {
+                last = DeploymentHistoryAction.getLatestDeployments(job, 1);
+                LAST_DEPLOYMENTS.put(job, last);
+            }
+            return last.isEmpty() ? null : last.get(0);
+        }
+    }
+
+    /**
+     * Forget the last deployment of the job, after a new one has been recorded in its index.
+     */
+    static void invalidateLastDeployment(Job job) {
+        synchronized (LAST_DEPLOYMENTS) {
+            LAST_DEPLOYMENTS.remove(job);
+        }
+    }
+
+    static void clear() {
+        BUILDS.clear();
+        synchronized (LAST_DEPLOYMENTS) {
+            LAST_DEPLOYMENTS.clear();
+        }
+    }
+
+    private static int getDeployableBuildNumber(Run build) {
+        if (build != null && build.getAction(DeploymentAction.class) != null) {
+            return build.getNumber();
+        } else {
+            return NOT_DEPLOYABLE;
+        }
+    }
+
+    @Extension
+    public static class Listener extends RunListener<Run> {
+        public Listener() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onStarted(Run run, TaskListener listener) {
+            // The running build becomes the last build, and has nothing to deploy yet
+            BUILDS.put(run.getParent(), NOT_DEPLOYABLE);
+        }
+
+        @Override
+        public void onCompleted(Run run, TaskListener listener) {
+            Job job = run.getParent();
+            // An older build can finish after a newer one has started
+            if (job.getLastBuild() == run) {
+                BUILDS.put(job, getDeployableBuildNumber(run));
+            }
+        }
+
+        @Override
+        public void onDeleted(Run run) {
+            Job job = run.getParent();
+            // Listeners are told before the build is removed, so it is still the last build
+            if (job.getLastBuild() == run) {
+                BUILDS.put(job, getDeployableBuildNumber(run.getPreviousBuild()));
+            }
+        }
+    }
+}
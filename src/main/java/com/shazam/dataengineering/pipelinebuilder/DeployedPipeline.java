@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.services.datapipeline.model.Field;
+import com.amazonaws.services.datapipeline.model.PipelineDescription;
+import hudson.model.Job;
+
+import java.util.Date;
+
+/**
+ * A pipeline deployed from a job, as last reported by AWS.
+ *
+ * @see DeployedPipelinesAction
+ */
+public class DeployedPipeline {
+    private final String jobFullName;
+    private final String jobName;
+    private final String jobUrl;
+    private final Integer buildNumber;
+    private final String username;
+    private final Date activated;
+    private final String pipelineId;
+    private final String name;
+    private final String state;
+    private final String health;
+    private final String latestRunTime;
+
+    public DeployedPipeline(Job job, Deployment deployment) {
+        this(job.getFullName(), job.getFullDisplayName(), job.getUrl(), deployment.getBuildNumber(),
+                deployment.getUsername(), deployment.getDate(), deployment.getPipelineId(), null, null, null, null);
+    }
+
+    private DeployedPipeline(String jobFullName, String jobName, String jobUrl, Integer buildNumber, String username,
+                             Date activated, String pipelineId, String name, String state, String health,
+                             String latestRunTime) {
+        this.jobFullName = jobFullName;
+        this.jobName = jobName;
+        this.jobUrl = jobUrl;
+        this.buildNumber = buildNumber;
+        this.username = username;
+        this.activated = activated;
+        this.pipelineId = pipelineId;
+        this.name = name;
+        this.state = state;
+        this.health = health;
+        this.latestRunTime = latestRunTime;
+    }
+
+    /**
+     * @return Copy of this pipeline with the name and status from its AWS description
+     */
+    public DeployedPipeline withDescription(PipelineDescription description) {
+        return new DeployedPipeline(jobFullName, jobName, jobUrl, buildNumber, username, activated, pipelineId,
+                description.getName(),
+                getField(description, "@pipelineState"),
+                getField(description, "@healthStatus"),
+                getField(description, "@latestRunTime"));
+    }
+
+    private static String getField(PipelineDescription description, String key) {
+        if (description.getFields() != null) {
+            for (Field field : description.getFields()) {
+                if (key.equals(field.getKey())) {
+                    return field.getStringValue();
+                }
+            }
+        }
+        return "";
+    }
+
+    public String getJobFullName() {
+        return jobFullName;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public String getJobUrl() {
+        return jobUrl;
+    }
+
+    public Integer getBuildNumber() {
+        return buildNumber;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Date getActivated() {
+        return activated;
+    }
+
+    public String getPipelineId() {
+        return pipelineId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Pipeline state reported by AWS, e.g. SCHEDULED, PAUSED or FINISHED
+     */
+    public String getState() {
+        return state;
+    }
+
+    public String getHealth() {
+        return health;
+    }
+
+    public String getLatestRunTime() {
+        return latestRunTime;
+    }
+
+    public boolean isScheduled() {
+        return "SCHEDULED".equals(state);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.datapipeline.DataPipelineClient;
+import com.amazonaws.services.datapipeline.model.PipelineDescription;
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Instance wide dashboard of the pipelines deployed from all jobs.
+ * <p/>
+ * The status of the pipelines is refreshed in the background by {@link Poller},
+ * which describes the pipelines currently deployed from each job in batched requests.
+ * Showing the page never calls AWS, and lists the pipelines of the jobs the viewer can read.
+ */
+@Extension
+public class DeployedPipelinesAction implements RootAction {
+    private static volatile Status status = new Status(Collections.<DeployedPipeline>emptyList(), null, null);
+    // Pipelines AWS no longer knows about, so that they aren't described again on every poll
+    private static final Set<String> REMOVED_PIPELINES = Collections.synchronizedSet(new HashSet<String>());
+
+    public String getIconFileName() {
+        if (!Jenkins.getInstance().hasPermission(Jenkins.READ)) {
+            return null;
+        }
+        return "/plugin/pipeline-builder/icons/pipeline-22x22.png";
+    }
+
+    public String getDisplayName() {
+        return "Deployed Pipelines";
+    }
+
+    public String getUrlName() {
+        return "deployed-pipelines";
+    }
+
+    /**
+     * @return Deployed pipelines of the jobs the user can read as of the last poll, most recently activated first
+     */
+    public List<DeployedPipeline> getPipelines() {
+        Jenkins jenkins = Jenkins.getInstance();
+        jenkins.checkPermission(Jenkins.READ);
+        ArrayList<DeployedPipeline> readable = new ArrayList<DeployedPipeline>();
+        for (DeployedPipeline pipeline : getAllPipelines()) {
+            Item job = jenkins.getItemByFullName(pipeline.getJobFullName());
+            if (job != null && job.hasPermission(Item.READ)) {
+                readable.add(pipeline);
+            }
+        }
+        return readable;
+    }
+
+    static List<DeployedPipeline> getAllPipelines() {
+        return status.pipelines;
+    }
+
+    /**
+     * @return Time of the last successful poll, or null if there hasn't been one yet
+     */
+    public Date getLastUpdated() {
+        return status.lastUpdated;
+    }
+
+    /**
+     * @return Error of the last poll if it failed, otherwise null
+     */
+    public String getLastError() {
+        return status.lastError;
+    }
+
+    /**
+     * Describe the given pipelines and replace the dashboard contents with the result.
+     *
+     * @param deployed Pipelines currently deployed from all jobs, by pipeline id
+     */
+    static void update(AWSProxy proxy, Map<String, DeployedPipeline> deployed) throws DeploymentException {
+        REMOVED_PIPELINES.retainAll(deployed.keySet());
+        ArrayList<String> pipelineIds = new ArrayList<String>();
+        for (String pipelineId : deployed.keySet()) {
+            if (!REMOVED_PIPELINES.contains(pipelineId)) {
+                pipelineIds.add(pipelineId);
+            }
+        }
+
+        List<PipelineDescription> descriptions;
+        try {
+            descriptions = proxy.describePipelines(pipelineIds);
+        } catch (DeploymentException e) {
+            status = new Status(status.pipelines, status.lastUpdated, getErrorMessage(e));
+            throw e;
+        }
+
+        ArrayList<DeployedPipeline> pipelines = new ArrayList<DeployedPipeline>();
+        HashSet<String> described = new HashSet<String>();
+        for (PipelineDescription description : descriptions) {
+            DeployedPipeline pipeline = deployed.get(description.getPipelineId());
+            if (pipeline != null && described.add(description.getPipelineId())) {
+                pipelines.add(pipeline.withDescription(description));
+            }
+        }
+        for (String pipelineId : pipelineIds) {
+            if (!described.contains(pipelineId)) {
+                REMOVED_PIPELINES.add(pipelineId);
+            }
+        }
+
+        Collections.sort(pipelines, new Comparator<DeployedPipeline>() {
+            public int compare(DeployedPipeline a, DeployedPipeline b) {
+                return b.getActivated().compareTo(a.getActivated());
+            }
+        });
+        status = new Status(Collections.unmodifiableList(pipelines), new Date(), null);
+    }
+
+    private static String getErrorMessage(DeploymentException e) {
+        return e.getCause() != null ? e.getCause().getMessage() : "Unknown error";
+    }
+
+    static void clear() {
+        REMOVED_PIPELINES.clear();
+        status = new Status(Collections.<DeployedPipeline>emptyList(), null, null);
+    }
+
+    private static class Status {
+        private final List<DeployedPipeline> pipelines;
+        private final Date lastUpdated;
+        private final String lastError;
+
+        private Status(List<DeployedPipeline> pipelines, Date lastUpdated, String lastError) {
+            this.pipelines = pipelines;
+            this.lastUpdated = lastUpdated;
+            this.lastError = lastError;
+        }
+    }
+
+    @Extension
+    public static class Poller extends AsyncPeriodicWork {
+        public Poller() {
+            super("Deployed pipelines poller");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return 5 * MIN;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException, InterruptedException {
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                return;
+            }
+            PipelineBuilder.DescriptorImpl descriptor = jenkins.getDescriptorByType(PipelineBuilder.DescriptorImpl.class);
+            if (descriptor == null || descriptor.getAccessId() == null || descriptor.getAccessId().isEmpty()) {
+                return;
+            }
+
+            // Pipelines replaced by later deployments are gone from AWS, so they aren't described
+            LinkedHashMap<String, DeployedPipeline> deployed = new LinkedHashMap<String, DeployedPipeline>();
+            for (AbstractProject project : jenkins.getAllItems(AbstractProject.class)) {
+                // A job deploys a pipeline for each of its environments
+                for (Deployment deployment : DeploymentHistoryAction.getCurrentDeployments(project).values()) {
+                    if (!deployed.containsKey(deployment.getPipelineId())) {
+                        deployed.put(deployment.getPipelineId(), new DeployedPipeline(project, deployment));
+                    }
+                }
+            }
+
+            DataPipelineClient client = new DataPipelineClient(
+                    new BasicAWSCredentials(descriptor.getAccessId(), descriptor.getSecretKey()));
+            try {
+                update(new AWSProxy(client), deployed);
+                listener.getLogger().println(String.format("[INFO] Described %d deployed pipelines", deployed.size()));
+            } catch (DeploymentException e) {
+                listener.error("Unable to describe deployed pipelines: " + getErrorMessage(e));
+            }
+        }
+    }
+}
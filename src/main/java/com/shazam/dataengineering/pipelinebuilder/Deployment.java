@@ -22,7 +22,10 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Deployment Data Transfer Object. Converts to and from a JSON entry.
@@ -34,15 +37,41 @@ public class Deployment {
     private boolean status;
     private Date date;
     private String pipelineId;
+    private Integer buildNumber;
+    // Logical name of the deployed pipeline, only recorded in the job index
+    private String pipeline;
     private List<String> messages;
-    private static final DateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
+    private JSONArray messageArray;
+    // Milliseconds spent in each stage of the deployment, in the order they ran
+    private LinkedHashMap<String, Long> timings;
+    // AWS API calls made by the deployment, by operation
+    private TreeMap<String, Long> apiCalls;
+    // SimpleDateFormat isn't thread safe, and deployments are rendered from concurrent requests
+    private static final ThreadLocal<DateFormat> isoFormat = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
+        }
+    };
 
     public Deployment(String username, boolean status, String pipelineId, Date date, List<String> messages) {
+        this(username, status, pipelineId, date, messages, new LinkedHashMap<String, Long>());
+    }
+
+    public Deployment(String username, boolean status, String pipelineId, Date date, List<String> messages,
+                      Map<String, Long> timings) {
+        this(username, status, pipelineId, date, messages, timings, new TreeMap<String, Long>());
+    }
+
+    public Deployment(String username, boolean status, String pipelineId, Date date, List<String> messages,
+                      Map<String, Long> timings, Map<String, Long> apiCalls) {
         this.username = username;
         this.status = status;
         this.date = date;
         this.messages = messages;
         this.pipelineId = pipelineId;
+        this.timings = new LinkedHashMap<String, Long>(timings);
+        this.apiCalls = new TreeMap<String, Long>(apiCalls);
     }
 
     public Deployment(JSONObject obj) {
@@ -50,16 +79,31 @@ public class Deployment {
         this.status = (Boolean) obj.get("status");
         this.pipelineId = (String) obj.get("pipelineId");
         this.date = new Date((Long) obj.get("date"));
-        JSONArray messageArray = (JSONArray) obj.get("messages");
-        this.messages = new ArrayList<String>();
-        for (int i = 0; i < messageArray.size(); i++) {
-            this.messages.add((String) messageArray.get(i));
+        if (obj.get("build") != null) {
+            this.buildNumber = ((Long) obj.get("build")).intValue();
+        }
+        this.pipeline = (String) obj.get("pipeline");
+        // Parsed with the rest of the entry, only the copy into a list waits until the messages are requested
+        this.messageArray = (JSONArray) obj.get("messages");
+        this.timings = new LinkedHashMap<String, Long>();
+        if (obj.get("timings") instanceof JSONArray) {
+            for (Object timing : (JSONArray) obj.get("timings")) {
+                JSONObject stage = (JSONObject) timing;
+                timings.put((String) stage.get("stage"), (Long) stage.get("millis"));
+            }
+        }
+        this.apiCalls = new TreeMap<String, Long>();
+        if (obj.get("apiCalls") instanceof JSONObject) {
+            for (Object call : ((JSONObject) obj.get("apiCalls")).entrySet()) {
+                Map.Entry entry = (Map.Entry) call;
+                apiCalls.put((String) entry.getKey(), (Long) entry.getValue());
+            }
         }
     }
 
     public JSONObject toJSON() {
         JSONArray messageArray = new JSONArray();
-        for (String message : messages) {
+        for (String message : getMessages()) {
             messageArray.add(message);
         }
 
@@ -69,10 +113,70 @@ public class Deployment {
         deployment.put("pipelineId", pipelineId);
         deployment.put("date", date.getTime());
         deployment.put("messages", messageArray);
+        if (buildNumber != null) {
+            deployment.put("build", buildNumber);
+        }
+        if (pipeline != null) {
+            deployment.put("pipeline", pipeline);
+        }
+        if (!timings.isEmpty()) {
+            // An array rather than an object, to keep the order of the stages
+            JSONArray timingArray = new JSONArray();
+            for (Map.Entry<String, Long> timing : timings.entrySet()) {
+                JSONObject stage = new JSONObject();
+                stage.put("stage", timing.getKey());
+                stage.put("millis", timing.getValue());
+                timingArray.add(stage);
+            }
+            deployment.put("timings", timingArray);
+        }
+        if (!apiCalls.isEmpty()) {
+            JSONObject callObject = new JSONObject();
+            callObject.putAll(apiCalls);
+            deployment.put("apiCalls", callObject);
+        }
 
         return deployment;
     }
 
+    /**
+     * Copy of this deployment without the messages, but with the stage timings and API calls.
+     *
+     * @return Summary deployment
+     */
+    public Deployment toSummary() {
+        Deployment summary = new Deployment(username, status, pipelineId, date, new ArrayList<String>(), timings,
+                apiCalls);
+        summary.buildNumber = buildNumber;
+        summary.pipeline = pipeline;
+        return summary;
+    }
+
+    /**
+     * Copy of this deployment without the messages, tagged with the build it came from.
+     *
+     * @param buildNumber Number of the build that was deployed
+     * @return Summary deployment
+     */
+    public Deployment toSummary(int buildNumber) {
+        Deployment summary = toSummary();
+        summary.buildNumber = buildNumber;
+        return summary;
+    }
+
+    /**
+     * Copy of this deployment without the messages, tagged with the build and the pipeline it deployed.
+     *
+     * @param buildNumber Number of the build that was deployed
+     * @param pipeline    Logical name of the deployed pipeline, the same for all builds of the job
+     * @return Summary deployment
+     */
+    public Deployment toSummary(int buildNumber, String pipeline) {
+        Deployment summary = toSummary(buildNumber);
+        summary.pipeline = pipeline;
+        return summary;
+    }
+
     public boolean isSuccess() {
         return status;
     }
@@ -90,14 +194,63 @@ public class Deployment {
     }
 
     public String getISODate() {
-        return isoFormat.format(date);
+        return isoFormat.get().format(date);
     }
 
     public String getPipelineId() {
         return pipelineId;
     }
 
+    /**
+     * @return Build number, or null if the entry was recorded in the build's own log
+     */
+    public Integer getBuildNumber() {
+        return buildNumber;
+    }
+
+    /**
+     * @return Logical name of the deployed pipeline, or null if the entry wasn't recorded in the job index
+     *         or was recorded before pipelines were
+     */
+    public String getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * @return Milliseconds spent in each stage, empty for deployments recorded before stages were timed
+     */
+    public Map<String, Long> getTimings() {
+        return timings;
+    }
+
+    /**
+     * @return AWS API calls made by the deployment by operation, empty for deployments recorded before calls were counted
+     */
+    public Map<String, Long> getApiCalls() {
+        return apiCalls;
+    }
+
+    public long getTotalMillis() {
+        long total = 0;
+        for (Long millis : timings.values()) {
+            total += millis;
+        }
+        return total;
+    }
+
+    /**
+     * @return Messages of the deployment, copied from the parsed entry on first use
+     */
     public List<String> getMessages() {
+        if (messages == null) {
+            messages = new ArrayList<String>();
+            if (messageArray != null) {
+                for (int i = 0; i < messageArray.size(); i++) {
+                    messages.add((String) messageArray.get(i));
+                }
+            }
+        }
+
         return messages;
     }
 }
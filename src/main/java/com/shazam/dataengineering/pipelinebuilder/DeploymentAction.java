@@ -24,19 +24,25 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import hudson.FilePath;
 import hudson.model.*;
+import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import javax.servlet.ServletException;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class DeploymentAction implements Action {
     private static final String LOG_FILENAME = "deployment.log";
+    private static final String RUNNING_WARNING = "[WARN] Old pipeline is currently running. Execution will be terminated.";
+    public static final int DEPLOYMENTS_PER_PAGE = 25;
+    // Held while deploying, by logical pipeline name across all jobs and builds
+    private static final LockRegistry PIPELINE_LOCKS = new LockRegistry();
+    // Longest a deploy request waits for the pipeline lock and the queue together, before browsers and proxies give up
+    static final long MAX_WAIT_MILLIS = 30 * 1000L;
 
     private AbstractProject project;
     private AbstractBuild build;
@@ -49,6 +55,8 @@ public class DeploymentAction implements Action {
     private PipelineObject pipelineObject;
     private DeploymentException lastException;
     private List<String> clientMessages = new ArrayList<String>();
+    // Not persisted, rebuilt from the artifacts on first use after a restart
+    private transient volatile DeploymentViewModel viewModel;
 
     public DeploymentAction(AbstractBuild build, Map<S3Environment, String> s3Urls, AWSCredentials awsCredentials) {
         this.project = build.getProject();
@@ -56,6 +64,7 @@ public class DeploymentAction implements Action {
         this.s3Urls = s3Urls;
         this.artifacts = build.getArtifacts();
         this.credentials = awsCredentials;
+        this.viewModel = DeploymentViewModel.create(artifacts);
     }
 
     public String getIconFileName() {
@@ -99,19 +108,37 @@ public class DeploymentAction implements Action {
     }
 
     public List<Deployment> getDeployments() {
-        FilePath newPath = new FilePath(new FilePath(build.getArtifactsDir()), LOG_FILENAME);
+        return getDeployments(0);
+    }
+
+    /**
+     * Page of previous deployments, newest first.
+     *
+     * @param page Page number, starting from 0 for the most recent deployments
+     * @return Deployments on the page
+     */
+    public List<Deployment> getDeployments(int page) {
         try {
-            String logContent = newPath.readToString();
+            return DeploymentLog.readLatest(getLogFile(), page * DEPLOYMENTS_PER_PAGE, DEPLOYMENTS_PER_PAGE);
+        } catch (IOException e) {
+            return Collections.EMPTY_LIST;
+        }
+    }
 
-            if (!logContent.isEmpty()) {
-                DeploymentLog dto = new DeploymentLog(logContent);
-                return dto.getAll();
-            }
+    public boolean hasDeployments(int page) {
+        try {
+            return page >= 0 && !DeploymentLog.readLatest(getLogFile(), page * DEPLOYMENTS_PER_PAGE, 1).isEmpty();
         } catch (IOException e) {
-            // Ignore
+            return false;
         }
+    }
 
-        return Collections.EMPTY_LIST;
+    public int getDeploymentPageNumber(String page) {
+        try {
+            return Math.max(0, Integer.parseInt(page));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
     public BallColor getBallColorRed() {
@@ -130,65 +157,78 @@ public class DeploymentAction implements Action {
         return s3Urls.size() > 0;
     }
 
-    public boolean oldPipelineHasRunningTasks() {
-        DataPipelineClient client = new DataPipelineClient(credentials);
-        AWSProxy proxy = new AWSProxy(client);
+    /**
+     * @return Status of the running task check of the confirmed old pipeline
+     */
+    public RunningTaskCheck.Status getOldPipelineStatus() {
+        return getRunningTaskStatus(pipelineToRemoveId);
+    }
 
-        return proxy.hasRunningTasks(pipelineToRemoveId);
+    private static RunningTaskCheck.Status getRunningTaskStatus(String pipelineId) {
+        if (pipelineId == null || pipelineId.isEmpty()) {
+            return RunningTaskCheck.Status.NOT_RUNNING;
+        }
+        return RunningTaskCheck.getInstance().getStatus(pipelineId);
     }
 
-    public List<String> getPipelines() {
-        ArrayList<String> pipelines = new ArrayList<String>();
-        if (artifacts != null && artifacts.size() > 0) {
-            for (Run.Artifact artifact : artifacts) {
-                try {
-                    PipelineObject object = new PipelineObject(new FilePath(artifact.getFile()).readToString());
-                    if (object.isValid()) {
-                        pipelines.add(artifact.getFileName());
-                    }
-                } catch (IOException e) {
-                    // Ignore
-                }
-            }
+    /**
+     * Status of the running task check of the old pipeline, polled by the confirm page.
+     */
+    public void doRunningTasks(StaplerRequest req, StaplerResponse resp) throws IOException {
+        if (hasPipelineToRemove() && getOldPipelineStatus() == RunningTaskCheck.Status.UNKNOWN) {
+            // Not checked since a restart, or the result is too old
+            startRunningTaskCheck();
         }
+        resp.setContentType("text/plain;charset=UTF-8");
+        resp.getWriter().print(getOldPipelineStatus().name());
+    }
 
-        return pipelines;
+    private void startRunningTaskCheck() {
+        RunningTaskCheck.getInstance().start(pipelineToRemoveId, new AWSProxy(createDataPipelineClient()));
     }
 
-    // TODO: Multiple schedule objects per pipeline
-    public String getScheduledDate() throws IOException {
-        PipelineObject pipelineObject = this.pipelineObject;
-        // TODO: Change based on the value of pipeline selector
-        if (pipelineObject == null && artifacts.size() > 0) {
-            if (pipelineFile != null) {
-                pipelineObject = getPipelineByName(pipelineFile);
-            } else {
-                Run.Artifact artifact = null;
-                // Get the pipeline file, any pipeline file
-                // TODO: This makes a lot of assumptions, need to fix.
-                for (Run.Artifact allegedPipeline : artifacts) {
-                    if (allegedPipeline.getFileName().endsWith(".json")) {
-                        artifact = allegedPipeline;
-                    }
-                }
+    public List<String> getPipelines() {
+        return getViewModel().getPipelines();
+    }
 
-                if (artifact != null) {
-                    pipelineObject = new PipelineObject(
-                            new FilePath(artifact.getFile()).readToString());
-                }
-            }
-        }
+    /**
+     * Dependency analysis written at build time for the given pipeline artifact.
+     *
+     * @return Analysis, or null if the build has none for this pipeline
+     */
+    public PipelineAnalysis getAnalysis(String pipeline) {
+        return getViewModel().getAnalysis(pipeline);
+    }
 
+    /**
+     * Changes since the version of the pipeline being deployed that is deployed now, computed at build time.
+     *
+     * @return Diff, or null if the pipeline wasn't deployed when the build ran
+     */
+    public PipelineDiff getDiff() {
+        return pipelineFile == null ? null : getViewModel().getDiff(pipelineFile);
+    }
+
+    // TODO: Multiple schedule objects per pipeline
+    public String getScheduledDate() {
         if (pipelineObject != null) {
             return pipelineObject.getScheduleDate();
         } else {
-            return "";
+            // TODO: Change based on the value of pipeline selector
+            return getViewModel().getScheduleDate(pipelineFile);
         }
     }
 
+    private DeploymentViewModel getViewModel() {
+        if (viewModel == null) {
+            viewModel = DeploymentViewModel.create(artifacts);
+        }
+        return viewModel;
+    }
+
     public void doConfirmProcess(StaplerRequest req, StaplerResponse resp) throws IOException, ServletException {
-        // Clear out previous warnings
-        clientMessages.clear();
+        // Replaced rather than cleared, the messages of the previous confirmation may still be rendered
+        clientMessages = new ArrayList<String>();
 
         JSONObject formData = req.getSubmittedForm();
         pipelineFile = formData.getString("pipeline");
@@ -213,11 +253,12 @@ public class DeploymentAction implements Action {
 
         // Find previously deployed pipeline.
         try {
-            DataPipelineClient client = new DataPipelineClient(credentials);
+            DataPipelineClient client = createDataPipelineClient();
 
             pipelineToRemoveId = getPipelineId(pipelineFile, client);
-            if (!pipelineToRemoveId.isEmpty() && oldPipelineHasRunningTasks()) {
-                clientMessages.add("[WARN] Old pipeline is currently running. Execution will be terminated.");
+            if (hasPipelineToRemove()) {
+                // The confirm page shows the result once it is known
+                startRunningTaskCheck();
             }
         } catch (DeploymentException e) {
             pipelineToRemoveId = "";
@@ -226,52 +267,181 @@ public class DeploymentAction implements Action {
         req.getView(this, "confirm").forward(req, resp);
     }
 
-    public synchronized void doDeploy(StaplerRequest req, StaplerResponse resp) throws ServletException, IOException {
-        DataPipelineClient client = new DataPipelineClient(credentials);
+    /**
+     * Deployments of the same pipeline, from this or any other build, replace it one at a time.
+     * Other pipelines are deployed in parallel, as far as the {@link DeploymentQueue} allows.
+     * A deployment that can't start within {@link #MAX_WAIT_MILLIS} is dropped, and the user asked to try again.
+     * <p/>
+     * The confirm page posts what it showed, so the deployment doesn't depend on the fields of the action,
+     * which another confirmation on the same build may change meanwhile.
+     * The report is rendered from the deployment of this request, passed to the view as the "deployment" attribute.
+     */
+    public void doDeploy(StaplerRequest req, StaplerResponse resp) throws ServletException, IOException {
+        Attempt attempt = createAttempt(req.getSubmittedForm());
+        DataPipelineClient client = createDataPipelineClient();
         Date start = new Date();
+        DeploymentTimings timings = new DeploymentTimings();
+        String lockKey = getLogicalPipelineName(attempt.pipelineFile);
+        Deployment deployment;
+        boolean interrupted = false;
+
+        // The deployment makes its AWS calls on this thread, see writeReport
+        AWSMetrics.startCounting();
+        try {
+            timings.start(DeploymentTimings.WAIT_FOR_LOCK);
+            if (PIPELINE_LOCKS.tryLock(lockKey, MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                try {
+                    deployment = deployQueued(attempt, client, start, timings, start.getTime() + MAX_WAIT_MILLIS);
+                } finally {
+                    PIPELINE_LOCKS.unlock(lockKey);
+                }
+            } else {
+                timings.stop();
+                attempt.messages.add("[ERROR] Another deployment of this pipeline is still running. " +
+                        "Nothing was deployed, try again once it has finished.");
+                deployment = writeReport(attempt, start, "", false, timings);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            timings.stop();
+            attempt.messages.add("[ERROR] Deployment was interrupted while waiting to start");
+            deployment = writeReport(attempt, start, "", false, timings);
+        } finally {
+            // Already stopped by the report, unless the deployment failed unexpectedly
+            AWSMetrics.stopCounting();
+        }
+
+        req.setAttribute("deployment", deployment);
+        req.getView(this, deployment.isSuccess() ? "report" : "error").forward(req, resp);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Attempt createAttempt(JSONObject formData) throws IOException {
+        String file = formData.optString("pipeline");
+        PipelineObject pipeline = getPipelineByName(file);
+        String startDate = formData.optString("scheduleDate");
+        if (pipeline != null && PipelineObject.validateDate(startDate)) {
+            pipeline.setScheduleDate(startDate);
+        }
+        return new Attempt(file, pipeline, formData.optString("pipelineToRemove"));
+    }
+
+    /**
+     * Queued only once the pipeline lock is held, so that waiting for the lock takes no place in the queue.
+     */
+    private Deployment deployQueued(Attempt attempt, DataPipelineClient client, Date start, DeploymentTimings timings,
+                                    long deadline) throws InterruptedException {
+        timings.start(DeploymentTimings.WAIT_FOR_QUEUE);
+        DeploymentQueue queue = DeploymentQueue.getInstance();
+        // The wait for the lock counts towards the longest wait
+        DeploymentQueue.Item item = queue.enter(project.getFullName(), build.getNumber(), attempt.pipelineFile,
+                attempt.isProduction(), Math.max(1, deadline - System.currentTimeMillis()));
+        if (item == null) {
+            timings.stop();
+            attempt.messages.add("[ERROR] Too many deployments are running. " +
+                    "Nothing was deployed, try again once the deployment queue has room.");
+            return writeReport(attempt, start, "", false, timings);
+        }
+
         try {
-            String pipelineId = createNewPipeline(client);
-            validateNewPipeline(pipelineId, client);
-            uploadNewPipeline(pipelineId, client);
-            deployScriptsToS3();
-            removeOldPipeline(client);
-            activateNewPipeline(pipelineId, client);
-            writeReport(start, pipelineId, true);
-            req.getView(this, "report").forward(req, resp);
+            return deploy(attempt, client, start, timings);
+        } finally {
+            queue.leave(item);
+        }
+    }
+
+    private Deployment deploy(Attempt attempt, DataPipelineClient client, Date start, DeploymentTimings timings) {
+        try {
+            timings.start(DeploymentTimings.VALIDATE_STRUCTURE);
+            validatePipelineStructure(attempt);
+            timings.start(DeploymentTimings.FIND_OLD_PIPELINE);
+            findOldPipeline(attempt, client);
+            timings.start(DeploymentTimings.CREATE_PIPELINE);
+            String pipelineId = createNewPipeline(attempt, client);
+            timings.start(DeploymentTimings.VALIDATE_DEFINITION);
+            validateNewPipeline(attempt, pipelineId, client);
+            timings.start(DeploymentTimings.PUT_DEFINITION);
+            uploadNewPipeline(attempt, pipelineId, client);
+            timings.start(DeploymentTimings.UPLOAD_SCRIPTS);
+            deployScriptsToS3(attempt);
+            timings.start(DeploymentTimings.DELETE_PIPELINE);
+            removeOldPipeline(attempt, client);
+            timings.start(DeploymentTimings.ACTIVATE_PIPELINE);
+            activateNewPipeline(attempt, pipelineId, client);
+            timings.stop();
+            return writeReport(attempt, start, pipelineId, true, timings);
         } catch (DeploymentException e) {
+            timings.stop();
             if (e.getCause() != null) {
-                clientMessages.add("[ERROR] " + e.getCause().getMessage());
+                attempt.messages.add("[ERROR] " + e.getCause().getMessage());
             }
-            writeReport(start, "", false);
-            req.getView(this, "error").forward(req, resp);
+            return writeReport(attempt, start, "", false, timings);
+        }
+    }
+
+    /**
+     * Another build may have replaced the pipeline since this deployment was confirmed.
+     * The background check started on confirmation only covers the confirmed pipeline,
+     * and may not have finished yet, so otherwise the old pipeline is checked for running tasks here.
+     */
+    private void findOldPipeline(Attempt attempt, DataPipelineClient client) throws DeploymentException {
+        String pipelineId = getPipelineId(attempt.pipelineFile, client);
+        RunningTaskCheck.Status status = getRunningTaskStatus(attempt.pipelineToRemoveId);
+        if (!pipelineId.equals(attempt.pipelineToRemoveId)) {
+            attempt.messages.add(String.format("[INFO] Pipeline to remove is now %s, it was %s when confirmed",
+                    pipelineId.isEmpty() ? "none" : pipelineId,
+                    attempt.hasPipelineToRemove() ? attempt.pipelineToRemoveId : "none"));
+            attempt.pipelineToRemoveId = pipelineId;
+            status = RunningTaskCheck.Status.UNKNOWN;
+        }
+
+        if (status == RunningTaskCheck.Status.PENDING || status == RunningTaskCheck.Status.UNKNOWN) {
+            if (attempt.hasPipelineToRemove() && new AWSProxy(client).hasRunningTasks(attempt.pipelineToRemoveId)) {
+                attempt.messages.add(RUNNING_WARNING);
+            }
+        } else if (status == RunningTaskCheck.Status.RUNNING) {
+            attempt.messages.add(RUNNING_WARNING);
         }
     }
 
-    private void deployScriptsToS3() throws DeploymentException {
+    private void deployScriptsToS3(Attempt attempt) throws DeploymentException {
         String pathPrefix = build.getArtifactsDir().getPath() + "/scripts/";
-        AmazonS3 s3Client = new AmazonS3Client(credentials);
+        AmazonS3 s3Client = createS3Client();
         for (S3Environment env : s3Urls.keySet()) {
-            if (env.pipelineName.equals(pipelineFile)) {
+            if (env.pipelineName.equals(attempt.pipelineFile)) {
                 String filename = env.scriptName;
                 File file = new File(pathPrefix + filename);
                 if (file.exists()) {
                     String url = s3Urls.get(env);
-                    clientMessages.add(String.format("[INFO] Uploading %s to %s", filename, url));
+                    attempt.messages.add(String.format("[INFO] Uploading %s to %s", filename, url));
                     boolean result = AWSProxy.uploadFileToS3Url(s3Client, url, file);
                     if (result) {
-                        clientMessages.add(String.format("[INFO] Upload successful!"));
+                        attempt.messages.add(String.format("[INFO] Upload successful!"));
                     } else {
-                        clientMessages.add(String.format("[ERROR] Upload failed!"));
+                        attempt.messages.add(String.format("[ERROR] Upload failed!"));
                         throw new DeploymentException();
                     }
                 } else {
-                    clientMessages.add(String.format("[ERROR] Unable to find %s in artifacts", filename));
+                    attempt.messages.add(String.format("[ERROR] Unable to find %s in artifacts", filename));
                     throw new DeploymentException();
                 }
             }
         }
     }
 
+    /**
+     * Clients are created for every request, and are replaced by in-memory ones in load tests.
+     */
+    DataPipelineClient createDataPipelineClient() {
+        return new DataPipelineClient(credentials);
+    }
+
+    AmazonS3 createS3Client() {
+        return new AmazonS3Client(credentials);
+    }
+
     private PipelineObject getPipelineByName(String pipelineName) throws IOException {
         if (!pipelineName.isEmpty() && artifacts != null && artifacts.size() > 0) {
             for (Run.Artifact artifact : artifacts) {
@@ -284,82 +454,125 @@ public class DeploymentAction implements Action {
         return null;
     }
 
-    private String getPipelineName() {
-        return pipelineFile.substring(0, pipelineFile.lastIndexOf(".json"));
-    }
 
-    private void activateNewPipeline(String pipelineId, DataPipelineClient client) throws DeploymentException {
+    private void activateNewPipeline(Attempt attempt, String pipelineId, DataPipelineClient client) throws DeploymentException {
         AWSProxy proxy = new AWSProxy(client);
         proxy.activatePipeline(pipelineId);
-        clientMessages.add("[INFO] Pipeline has been activated!");
-        clientMessages.add("[INFO] New pipeline ID: " + pipelineId);
+        attempt.messages.add("[INFO] Pipeline has been activated!");
+        attempt.messages.add("[INFO] New pipeline ID: " + pipelineId);
     }
 
-    private void uploadNewPipeline(String pipelineId, DataPipelineClient client) throws DeploymentException {
+    private void uploadNewPipeline(Attempt attempt, String pipelineId, DataPipelineClient client) throws DeploymentException {
         AWSProxy proxy = new AWSProxy(client);
-        boolean success = proxy.putPipeline(pipelineId, pipelineObject);
+        boolean success = proxy.putPipeline(pipelineId, attempt.pipelineObject);
         if (!success) {
-            clientMessages.add("[ERROR] Unable to upload new pipeline definition.");
+            attempt.messages.add("[ERROR] Unable to upload new pipeline definition.");
             throw new DeploymentException();
         } else {
-            clientMessages.add("[INFO] Upload of pipeline definition completed successfully");
+            attempt.messages.add("[INFO] Upload of pipeline definition completed successfully");
+        }
+    }
+
+    private void validatePipelineStructure(Attempt attempt) throws DeploymentException {
+        if (attempt.pipelineObject == null) {
+            attempt.messages.add("[ERROR] Pipeline not found");
+            throw new DeploymentException();
+        }
+
+        List<String> errors = new PipelineValidator().validate(attempt.pipelineObject);
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                attempt.messages.add("[ERROR] " + error);
+            }
+            attempt.messages.add("[ERROR] Pipeline definition is structurally invalid, nothing was created.");
+            throw new DeploymentException();
         }
     }
 
-    private void validateNewPipeline(String pipelineId, DataPipelineClient client) throws DeploymentException {
+    private void validateNewPipeline(Attempt attempt, String pipelineId, DataPipelineClient client) throws DeploymentException {
         AWSProxy proxy = new AWSProxy(client);
-        ValidatePipelineDefinitionResult validation = proxy.validatePipeline(pipelineId, pipelineObject);
+        ValidatePipelineDefinitionResult validation = proxy.validatePipeline(pipelineId, attempt.pipelineObject);
 
         List<ValidationError> errors = validation.getValidationErrors();
         List<ValidationWarning> warnings = validation.getValidationWarnings();
 
         for (ValidationError error : errors) {
             for (String errorMessage : error.getErrors()) {
-                clientMessages.add("[ERROR] " + errorMessage);
+                attempt.messages.add("[ERROR] " + errorMessage);
             }
         }
 
         for (ValidationWarning warning : warnings) {
             for (String warningMessage : warning.getWarnings()) {
-                clientMessages.add("[WARN] " + warningMessage);
+                attempt.messages.add("[WARN] " + warningMessage);
             }
         }
 
         if (validation.isErrored()) {
-            clientMessages.add("[ERROR] Critical errors detected in validation.");
+            attempt.messages.add("[ERROR] Critical errors detected in validation.");
             throw new DeploymentException();
         } else {
-            clientMessages.add("[INFO] No critical errors for the pipeline detected in validation.");
+            attempt.messages.add("[INFO] No critical errors for the pipeline detected in validation.");
         }
     }
 
-    private String createNewPipeline(DataPipelineClient client) throws DeploymentException {
+    private String createNewPipeline(Attempt attempt, DataPipelineClient client) throws DeploymentException {
         AWSProxy proxy = new AWSProxy(client);
-        return proxy.createPipeline(getPipelineName());
+        return proxy.createPipeline(attempt.getPipelineName());
     }
 
-    private void removeOldPipeline(DataPipelineClient client) throws DeploymentException {
-        if (pipelineToRemoveId == null || !pipelineToRemoveId.isEmpty()) {
+    private void removeOldPipeline(Attempt attempt, DataPipelineClient client) throws DeploymentException {
+        if (attempt.pipelineToRemoveId == null || !attempt.pipelineToRemoveId.isEmpty()) {
             AWSProxy proxy = new AWSProxy(client);
-            boolean result = proxy.removePipeline(pipelineToRemoveId);
+            boolean result = proxy.removePipeline(attempt.pipelineToRemoveId);
 
             if (result) {
-                clientMessages.add("[INFO] Successfully removed pipeline " + pipelineToRemoveId);
+                attempt.messages.add("[INFO] Successfully removed pipeline " + attempt.pipelineToRemoveId);
             } else {
-                clientMessages.add("[WARN] Failed to remove pipeline " + pipelineToRemoveId);
+                attempt.messages.add("[WARN] Failed to remove pipeline " + attempt.pipelineToRemoveId);
             }
         } else {
-            clientMessages.add("[INFO] No old pipeline to remove");
+            attempt.messages.add("[INFO] No old pipeline to remove");
         }
     }
 
+    /**
+     * Builds of a job deploy versions of the same pipeline, named after the job and told apart by build number.
+     */
+    static String getLogicalPipelineName(String pipelineName) {
+        int separator = pipelineName.lastIndexOf("-");
+        return separator < 0 ? pipelineName : pipelineName.substring(0, separator);
+    }
+
     private String getPipelineId(String pipelineName, DataPipelineClient client) throws DeploymentException {
-        String pipelineRegex = pipelineName.substring(0, pipelineName.lastIndexOf("-")) + "-\\d+";
+        String pipelineRegex = getLogicalPipelineName(pipelineName) + "-\\d+";
         AWSProxy proxy = new AWSProxy(client);
         return proxy.getPipelineId(pipelineRegex);
     }
 
-    private void writeReport(Date date, String pipelineId, boolean success) {
+    private File getLogFile() {
+        return new File(build.getArtifactsDir(), LOG_FILENAME);
+    }
+
+    private void appendToLog(Deployment deployment) throws IOException {
+        int fullEntries = PipelineBuilder.DescriptorImpl.DEFAULT_FULL_LOG_ENTRIES;
+        int segmentSize = PipelineBuilder.DescriptorImpl.DEFAULT_LOG_SEGMENT_SIZE;
+        int segments = PipelineBuilder.DescriptorImpl.DEFAULT_LOG_SEGMENTS;
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins != null) {
+            PipelineBuilder.DescriptorImpl descriptor = jenkins.getDescriptorByType(PipelineBuilder.DescriptorImpl.class);
+            if (descriptor != null) {
+                fullEntries = descriptor.getFullLogEntries();
+                segmentSize = descriptor.getLogSegmentSize();
+                segments = descriptor.getLogSegments();
+            }
+        }
+
+        DeploymentLog.append(getLogFile(), deployment, fullEntries, segmentSize * 1024L, segments);
+    }
+
+    private Deployment writeReport(Attempt attempt, Date date, String pipelineId, boolean success,
+                                   DeploymentTimings timings) {
         User currentUser = User.current();
         String username;
         if (currentUser != null) {
@@ -368,29 +581,53 @@ public class DeploymentAction implements Action {
             username = "Anonymous";
         }
 
-        FilePath newPath = new FilePath(new FilePath(build.getArtifactsDir()), LOG_FILENAME);
+        Deployment deployment = new Deployment(username, success, pipelineId, date, attempt.messages,
+                timings.getTimings(), AWSMetrics.stopCounting());
         try {
-            String logContent = "";
-            DeploymentLog dto;
+            appendToLog(deployment);
+            DeploymentHistoryAction.record(project, build.getNumber(), getLogicalPipelineName(attempt.pipelineFile),
+                    deployment);
+        } catch (IOException e) {
+            attempt.messages.add("[ERROR] Failed to write deployment report!");
+        }
+        return deployment;
+    }
 
-            try {
-                logContent = newPath.readToString();
-            } catch (FileNotFoundException e) {
-                // Ignore
-            }
+    /**
+     * State of a single deploy request. Requests on the same action may run at once,
+     * for different pipelines of the build, so each has its own rather than using the fields of the action.
+     */
+    static class Attempt {
+        private final String pipelineFile;
+        private final PipelineObject pipelineObject;
+        // Replaced if another build deployed the pipeline since confirmation
+        private String pipelineToRemoveId;
+        private final List<String> messages = new ArrayList<String>();
+
+        Attempt(String pipelineFile, PipelineObject pipelineObject, String pipelineToRemoveId) {
+            this.pipelineFile = pipelineFile;
+            this.pipelineObject = pipelineObject;
+            this.pipelineToRemoveId = pipelineToRemoveId;
+        }
 
-            if (logContent.isEmpty()) {
-                dto = new DeploymentLog();
-            } else {
-                dto = new DeploymentLog(logContent);
-            }
-            dto.add(username, success, pipelineId, date, clientMessages);
+        String getPipelineToRemoveId() {
+            return pipelineToRemoveId;
+        }
 
-            newPath.write(dto.toString(), StandardCharsets.UTF_8.name());
-        } catch (IOException e) {
-            clientMessages.add("[ERROR] Failed to write deployment report!");
-        } catch (InterruptedException e) {
-            clientMessages.add("[ERROR] Failed to write deployment report!");
+        List<String> getMessages() {
+            return messages;
+        }
+
+        private boolean hasPipelineToRemove() {
+            return pipelineToRemoveId != null && !pipelineToRemoveId.isEmpty();
+        }
+
+        private boolean isProduction() {
+            return pipelineFile.startsWith(PipelineProcessor.PRODUCTION_PREFIX);
+        }
+
+        private String getPipelineName() {
+            return pipelineFile.substring(0, pipelineFile.lastIndexOf(".json"));
         }
     }
 }
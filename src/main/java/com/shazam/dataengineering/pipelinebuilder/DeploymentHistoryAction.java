@@ -0,0 +1,222 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.BallColor;
+import hudson.model.Job;
+import hudson.model.TransientProjectActionFactory;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Job level view of the deployments done from all builds of the job.
+ * <p/>
+ * Every deployment is summarised into a single index file in the job directory,
+ * so the history can be shown without opening the deployment log of every build.
+ * The index is rolled into segments like the deployment logs, with the same size and retention settings.
+ */
+public class DeploymentHistoryAction implements Action {
+    private static final String INDEX_FILENAME = "pipeline-deployments.log";
+    // Number of recent deployments the stage timings are aggregated over
+    public static final int STATISTICS_DEPLOYMENTS = 100;
+    // Number of recent deployments searched for the pipelines deployed now
+    private static final int CURRENT_DEPLOYMENTS_SEARCHED = 1000;
+
+    private AbstractProject project;
+
+    public DeploymentHistoryAction(AbstractProject project) {
+        this.project = project;
+    }
+
+    public String getIconFileName() {
+        return "/plugin/pipeline-builder/icons/pipeline-22x22.png";
+    }
+
+    public String getDisplayName() {
+        return "Pipeline Deployments";
+    }
+
+    public String getUrlName() {
+        return "pipeline-deployments";
+    }
+
+    public AbstractProject getProject() {
+        return project;
+    }
+
+    public BallColor getBallColorRed() {
+        return BallColor.RED;
+    }
+
+    public BallColor getBallColorBlue() {
+        return BallColor.BLUE;
+    }
+
+    public List<Deployment> getDeployments(int page) {
+        try {
+            return DeploymentLog.readLatest(
+                    getIndexFile(project),
+                    page * DeploymentAction.DEPLOYMENTS_PER_PAGE,
+                    DeploymentAction.DEPLOYMENTS_PER_PAGE);
+        } catch (IOException e) {
+            return Collections.EMPTY_LIST;
+        }
+    }
+
+    public boolean hasDeployments(int page) {
+        try {
+            return page >= 0 && !DeploymentLog.readLatest(
+                    getIndexFile(project), page * DeploymentAction.DEPLOYMENTS_PER_PAGE, 1).isEmpty();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getDeploymentPageNumber(String page) {
+        try {
+            return Math.max(0, Integer.parseInt(page));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return Time spent in each deployment stage over the most recent deployments of the job
+     */
+    public List<StageStatistics> getStageStatistics() {
+        return StageStatistics.aggregate(getLatestDeployments(project, STATISTICS_DEPLOYMENTS));
+    }
+
+    /**
+     * @return Most recent deployment of the job, successful or not
+     */
+    public Deployment getLastDeployment() {
+        return getLastDeployment(project);
+    }
+
+    public static Deployment getLastDeployment(Job job) {
+        try {
+            List<Deployment> latest = DeploymentLog.readLatest(getIndexFile(job), 0, 1);
+            return latest.isEmpty() ? null : latest.get(0);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param pipeline Logical name of the pipeline
+     * @return Most recent successful deployment of the pipeline from the job, which is the one deployed now, or null
+     */
+    public static Deployment getCurrentDeployment(Job job, String pipeline) {
+        return pipeline == null ? null : getCurrentDeployments(job).get(pipeline);
+    }
+
+    /**
+     * Pipelines deployed now from the job, from the most recent successful deployment of each.
+     * Jobs only deployed before pipelines were recorded in the index have their most recent
+     * successful deployment under null, as it can't be told which pipeline it was.
+     *
+     * @return Deployments by logical pipeline name, most recent first
+     */
+    public static Map<String, Deployment> getCurrentDeployments(Job job) {
+        LinkedHashMap<String, Deployment> current = new LinkedHashMap<String, Deployment>();
+        Deployment legacy = null;
+        for (Deployment deployment : getLatestDeployments(job, CURRENT_DEPLOYMENTS_SEARCHED)) {
+            String pipelineId = deployment.getPipelineId();
+            if (!deployment.isSuccess() || pipelineId == null || pipelineId.isEmpty()) {
+                continue;
+            }
+
+            if (deployment.getPipeline() == null) {
+                if (legacy == null) {
+                    legacy = deployment;
+                }
+            } else if (!current.containsKey(deployment.getPipeline())) {
+                current.put(deployment.getPipeline(), deployment);
+            }
+        }
+
+        if (current.isEmpty() && legacy != null) {
+            current.put(null, legacy);
+        }
+        return current;
+    }
+
+    /**
+     * @param count Maximum number of deployments to return
+     * @return Most recent deployments of the job, newest first
+     */
+    public static List<Deployment> getLatestDeployments(Job job, int count) {
+        try {
+            return DeploymentLog.readLatest(getIndexFile(job), 0, count);
+        } catch (IOException e) {
+            return Collections.EMPTY_LIST;
+        }
+    }
+
+    /**
+     * Record a deployment in the job index.
+     *
+     * @param job         Job the deployed build belongs to
+     * @param buildNumber Number of the deployed build
+     * @param pipeline    Logical name of the deployed pipeline
+     * @param deployment  Deployment, messages are not stored in the index
+     * @throws IOException
+     */
+    public static void record(Job job, int buildNumber, String pipeline, Deployment deployment) throws IOException {
+        int segmentSize = PipelineBuilder.DescriptorImpl.DEFAULT_LOG_SEGMENT_SIZE;
+        int segments = PipelineBuilder.DescriptorImpl.DEFAULT_LOG_SEGMENTS;
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins != null) {
+            PipelineBuilder.DescriptorImpl descriptor = jenkins.getDescriptorByType(PipelineBuilder.DescriptorImpl.class);
+            if (descriptor != null) {
+                segmentSize = descriptor.getLogSegmentSize();
+                segments = descriptor.getLogSegments();
+            }
+        }
+
+        // Index entries have no messages, so as many are kept in the index as fit in a segment
+        DeploymentLog.append(getIndexFile(job), deployment.toSummary(buildNumber, pipeline), Integer.MAX_VALUE,
+                segmentSize * 1024L, segments);
+        DeployableBuildCache.invalidateLastDeployment(job);
+    }
+
+    private static File getIndexFile(Job job) {
+        return new File(job.getRootDir(), INDEX_FILENAME);
+    }
+
+    @Extension
+    public static class Factory extends TransientProjectActionFactory {
+        @Override
+        public Collection<? extends Action> createFor(AbstractProject target) {
+            if (getIndexFile(target).exists()) {
+                return Collections.singletonList(new DeploymentHistoryAction(target));
+            } else {
+                return Collections.EMPTY_LIST;
+            }
+        }
+    }
+}
@@ -15,36 +15,353 @@
  */
 package com.shazam.dataengineering.pipelinebuilder;
 
+import hudson.FilePath;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
 /**
  * DTO object for deployment log
+ * <p/>
+ * The log is line delimited: every line holds a single deployment entry,
+ * so new deployments can be appended without reading the existing log.
+ * Logs written as a single {"deployments": [...]} document by earlier versions
+ * are still read, and may have new entries appended after them.
+ * <p/>
+ * Once the log grows past the segment size, it is rolled: all but the most recent
+ * entries are compacted into summaries without messages and moved into a numbered
+ * segment file next to the log (deployment.log.1, deployment.log.2, ...). Only as
+ * many recent entries are kept as fit in the segment size, so that the log doesn't
+ * stay over it and roll again on every append. The oldest segments are deleted
+ * once there are more than the retention limit.
  */
 public class DeploymentLog {
-    private JSONObject log;
+    private JSONArray deployments = new JSONArray();
     private ParseException parseException;
 
     private static final String ROOT = "deployments";
+    private static final int CHUNK_SIZE = 8192;
+    private static final LockRegistry LOCKS = new LockRegistry();
 
-    public DeploymentLog(String json) {
-        try {
-            JSONParser jsonParser = new JSONParser();
-            log = (JSONObject) jsonParser.parse(json);
-        } catch (ParseException e) {
-            parseException = e;
+    public DeploymentLog(String content) {
+        JSONParser jsonParser = new JSONParser();
+        for (String line : content.split("\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            try {
+                Object entry = jsonParser.parse(line);
+                if (entry instanceof JSONObject && ((JSONObject) entry).containsKey(ROOT)) {
+                    // Legacy single document log
+                    deployments.addAll((JSONArray) ((JSONObject) entry).get(ROOT));
+                } else if (entry instanceof JSONObject) {
+                    deployments.add(entry);
+                }
+            } catch (ParseException e) {
+                // Skip the broken line, but keep the rest of the history readable
+                parseException = e;
+            }
         }
     }
 
     public DeploymentLog() {
-        log = new JSONObject();
-        log.put(ROOT, new JSONArray());
+    }
+
+    /**
+     * Append a deployment to the log file without reading or rewriting existing entries.
+     *
+     * @param logFile    Log file, created if it doesn't exist
+     * @param deployment Deployment to record
+     * @throws IOException
+     */
+    public static void append(File logFile, Deployment deployment) throws IOException {
+        String key = getLockKey(logFile);
+        LOCKS.lock(key);
+        try {
+            appendLine(logFile, deployment);
+        } finally {
+            LOCKS.unlock(key);
+        }
+    }
+
+    private static void appendLine(File logFile, Deployment deployment) throws IOException {
+        StringBuilder line = new StringBuilder();
+        if (!endsWithNewline(logFile)) {
+            // Legacy logs were written without a trailing newline
+            line.append('\n');
+        }
+        line.append(deployment.toJSON().toJSONString()).append('\n');
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8);
+        try {
+            writer.write(line.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Append a deployment, and roll the log into a compacted segment once it grows too large.
+     * All rolled segments are kept.
+     *
+     * @see #append(File, Deployment, int, long, int)
+     */
+    public static void append(File logFile, Deployment deployment, int fullEntries, long segmentSize)
+            throws IOException {
+        append(logFile, deployment, fullEntries, segmentSize, 0);
+    }
+
+    /**
+     * Append a deployment, and roll the log into a compacted segment once it grows too large.
+     *
+     * @param logFile     Log file, created if it doesn't exist
+     * @param deployment  Deployment to record
+     * @param fullEntries Number of most recent entries that keep their messages when the log is rolled
+     * @param segmentSize Size in bytes after which the log is rolled, 0 to never roll
+     * @param maxSegments Number of rolled segments kept, the oldest are deleted. 0 to keep all
+     * @throws IOException
+     */
+    public static void append(File logFile, Deployment deployment, int fullEntries, long segmentSize,
+                              int maxSegments) throws IOException {
+        String key = getLockKey(logFile);
+        LOCKS.lock(key);
+        try {
+            appendLine(logFile, deployment);
+            if (segmentSize > 0 && logFile.length() > segmentSize) {
+                roll(logFile, fullEntries, segmentSize, maxSegments);
+            }
+        } finally {
+            LOCKS.unlock(key);
+        }
+    }
+
+    /**
+     * @return Locks held while writing logs, which count how often writers waited for each other
+     */
+    static LockRegistry getLocks() {
+        return LOCKS;
+    }
+
+    /**
+     * Writers in different actions and builds may target the same file,
+     * so locks are keyed by the file rather than held on any instance.
+     */
+    private static String getLockKey(File logFile) {
+        try {
+            return logFile.getCanonicalPath();
+        } catch (IOException e) {
+            return logFile.getAbsolutePath();
+        }
+    }
+
+    private static void roll(File logFile, int fullEntries, long segmentSize, int maxSegments) throws IOException {
+        List<Deployment> all = new DeploymentLog(new FilePath(logFile).readToString()).getAll();
+        // The newest entry is kept even if it doesn't fit on its own, it is compacted on the next roll
+        int split = all.size();
+        long keptSize = 0;
+        while (split > 0 && all.size() - split < fullEntries) {
+            long size = getSerializedSize(all.get(split - 1));
+            if (split < all.size() && keptSize + size > segmentSize) {
+                break;
+            }
+            keptSize += size;
+            split--;
+        }
+
+        DeploymentLog segment = new DeploymentLog();
+        for (Deployment deployment : all.subList(0, split)) {
+            segment.add(deployment.toSummary());
+        }
+        DeploymentLog active = new DeploymentLog();
+        for (Deployment deployment : all.subList(split, all.size())) {
+            active.add(deployment);
+        }
+
+        // Write the segment before truncating the log, so a failure duplicates entries rather than losing them
+        if (split > 0) {
+            List<File> segments = getSegments(logFile);
+            int next = segments.isEmpty() ? 1 : getSegmentNumber(logFile, segments.get(0)) + 1;
+            replace(new File(logFile.getParentFile(), logFile.getName() + "." + next), segment.serialize());
+        }
+        replace(logFile, active.serialize());
+
+        if (maxSegments > 0) {
+            List<File> segments = getSegments(logFile);
+            for (File expired : segments.subList(Math.min(maxSegments, segments.size()), segments.size())) {
+                // The deployment is already recorded, a segment left behind is deleted on the next roll
+                expired.delete();
+            }
+        }
+    }
+
+    private static long getSerializedSize(Deployment deployment) {
+        // Including the newline
+        return deployment.toJSON().toJSONString().getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    private static void replace(File file, String content) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            // Rename doesn't replace existing files on every platform
+            if (!file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+
+    /**
+     * @return Rolled segments of the log, newest first
+     */
+    private static List<File> getSegments(final File logFile) {
+        File[] files = logFile.getParentFile().listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return getSegmentNumber(logFile, file) > 0;
+            }
+        });
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        List<File> segments = Arrays.asList(files);
+        Collections.sort(segments, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return getSegmentNumber(logFile, b) - getSegmentNumber(logFile, a);
+            }
+        });
+        return segments;
+    }
+
+    private static int getSegmentNumber(File logFile, File segment) {
+        String prefix = logFile.getName() + ".";
+        String name = segment.getName();
+        if (!name.startsWith(prefix)) {
+            return 0;
+        }
+
+        try {
+            return Integer.parseInt(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean endsWithNewline(File logFile) throws IOException {
+        if (!logFile.exists() || logFile.length() == 0) {
+            return true;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            file.seek(file.length() - 1);
+            return file.read() == '\n';
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Read the most recent deployments from the log file, newest first.
+     * The file is read backwards from the end, continuing into rolled segments,
+     * so the cost depends on the requested page rather than the size of the whole history.
+     *
+     * @param logFile Log file
+     * @param skip    Number of most recent deployments to skip
+     * @param limit   Maximum number of deployments to return
+     * @return Deployments, newest first
+     * @throws IOException
+     */
+    public static List<Deployment> readLatest(File logFile, int skip, int limit) throws IOException {
+        Page page = new Page(skip, limit);
+        if (!logFile.exists() || limit <= 0) {
+            return page.deployments;
+        }
+
+        // Hold the lock so a concurrent roll can't move entries between the log and its segments mid-read
+        String key = getLockKey(logFile);
+        LOCKS.lock(key);
+        try {
+            readBackwards(logFile, page);
+            if (!page.isFull()) {
+                for (File segment : getSegments(logFile)) {
+                    readBackwards(segment, page);
+                    if (page.isFull()) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            LOCKS.unlock(key);
+        }
+
+        return page.deployments;
+    }
+
+    private static void readBackwards(File logFile, Page page) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            long end = file.length();
+            // Chunks are read in front of the partial line carried over, held in buffer[start, lineEnd).
+            // The buffer is reused, and grows geometrically for lines longer than a chunk.
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int start = buffer.length;
+            int lineEnd = buffer.length;
+            while (end > 0 && !page.isFull()) {
+                int size = (int) Math.min(CHUNK_SIZE, end);
+                if (start < size) {
+                    int carried = lineEnd - start;
+                    byte[] target = buffer.length - carried >= size
+                            ? buffer : new byte[Math.max(buffer.length * 2, carried + size)];
+                    System.arraycopy(buffer, start, target, target.length - carried, carried);
+                    buffer = target;
+                    start = buffer.length - carried;
+                    lineEnd = buffer.length;
+                }
+                file.seek(end - size);
+                file.readFully(buffer, start - size, size);
+
+                // The carried line has no newline in it, so only the new chunk is scanned
+                for (int i = start - 1; i >= start - size && !page.isFull(); i--) {
+                    if (buffer[i] == '\n') {
+                        page.addLine(new String(buffer, i + 1, lineEnd - i - 1, StandardCharsets.UTF_8));
+                        lineEnd = i;
+                    }
+                }
+
+                start -= size;
+                end -= size;
+            }
+
+            if (end == 0 && !page.isFull()) {
+                // First line of the file has no newline before it
+                page.addLine(new String(buffer, start, lineEnd - start, StandardCharsets.UTF_8));
+            }
+        } finally {
+            file.close();
+        }
     }
 
     public void add(String username, boolean status, String pipelineId, Date date, List<String> messages) {
@@ -52,12 +369,10 @@ public class DeploymentLog {
     }
 
     public void add(Deployment deployment) {
-        JSONArray deployments = (JSONArray) log.get(ROOT);
         deployments.add(deployment.toJSON());
     }
 
     public List<Deployment> getAll() {
-        JSONArray deployments = (JSONArray) log.get(ROOT);
         ArrayList<Deployment> deploymentArrayList = new ArrayList<Deployment>();
         for (int i = 0; i < deployments.size(); i++) {
             deploymentArrayList.add(new Deployment((JSONObject) deployments.get(i)));
@@ -67,8 +382,7 @@ public class DeploymentLog {
     }
 
     public Deployment get(int index) {
-        ArrayList<Deployment> all = (ArrayList<Deployment>) getAll();
-        return all.get(index);
+        return new Deployment((JSONObject) deployments.get(index));
     }
 
     @Override
@@ -77,7 +391,12 @@ public class DeploymentLog {
     }
 
     public String serialize() {
-        return log.toJSONString();
+        StringBuilder builder = new StringBuilder();
+        for (Object deployment : deployments) {
+            builder.append(((JSONObject) deployment).toJSONString()).append('\n');
+        }
+
+        return builder.toString();
     }
 
     public boolean isParsed() {
@@ -88,4 +407,52 @@ public class DeploymentLog {
         return parseException;
     }
 
+    /**
+     * Collects one page of deployments while the log is read from the end.
+     */
+    private static class Page {
+        private final List<Deployment> deployments = new ArrayList<Deployment>();
+        private final JSONParser parser = new JSONParser();
+        private int skip;
+        private int limit;
+
+        private Page(int skip, int limit) {
+            this.skip = skip;
+            this.limit = limit;
+        }
+
+        private boolean isFull() {
+            return deployments.size() >= limit;
+        }
+
+        private void addLine(String line) {
+            if (line.trim().isEmpty()) {
+                return;
+            }
+
+            try {
+                Object entry = parser.parse(line);
+                if (entry instanceof JSONObject && ((JSONObject) entry).containsKey(ROOT)) {
+                    // Legacy single document log, always the first line of the file
+                    JSONArray legacy = (JSONArray) ((JSONObject) entry).get(ROOT);
+                    for (int i = legacy.size() - 1; i >= 0 && !isFull(); i--) {
+                        addEntry((JSONObject) legacy.get(i));
+                    }
+                } else if (entry instanceof JSONObject) {
+                    addEntry((JSONObject) entry);
+                }
+            } catch (ParseException e) {
+                // Skip the broken line
+            }
+        }
+
+        private void addEntry(JSONObject entry) {
+            if (skip > 0) {
+                skip--;
+            } else {
+                deployments.add(new Deployment(entry));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Instance wide queue of deployments, limiting how many of them call AWS at once.
+ * <p/>
+ * At most {@link #getMaxConcurrent()} deployments run at a time. Waiting deployments
+ * of production pipelines start before development ones, otherwise they start in
+ * the order they were queued.
+ */
+public class DeploymentQueue {
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+
+    private static final DeploymentQueue INSTANCE = new DeploymentQueue();
+
+    // Production first, then by the time of queueing
+    private final List<Item> waiting = new ArrayList<Item>();
+    private final List<Item> running = new ArrayList<Item>();
+    private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+
+    DeploymentQueue() {
+    }
+
+    public static DeploymentQueue getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Limits below one are raised to one. Waiting deployments start straight away if the limit allows.
+     */
+    public synchronized void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        startWaiting();
+    }
+
+    public synchronized int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Queue a deployment and wait until it may run. Every item entered must be left.
+     *
+     * @throws InterruptedException if interrupted while waiting, in which case the deployment is dropped
+     */
+    public Item enter(String job, int build, String pipeline, boolean production) throws InterruptedException {
+        return enter(job, build, pipeline, production, 0);
+    }
+
+    /**
+     * Queue a deployment and wait at most the given time until it may run. Every item entered must be left.
+     *
+     * @param timeoutMillis Longest time to wait, 0 to wait until the deployment may run
+     * @return Item of the running deployment, or null if it didn't start in time and was dropped
+     * @throws InterruptedException if interrupted while waiting, in which case the deployment is dropped
+     */
+    public Item enter(String job, int build, String pipeline, boolean production, long timeoutMillis)
+            throws InterruptedException {
+        Item item = new Item(job, build, pipeline, production);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            int position = waiting.size();
+            while (position > 0 && !waiting.get(position - 1).production && production) {
+                position--;
+            }
+            waiting.add(position, item);
+            startWaiting();
+
+            try {
+                while (item.started == null) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (timeoutMillis > 0 && remaining <= 0) {
+                        waiting.remove(item);
+                        return null;
+                    }
+                    // Waiting for 0 milliseconds waits until notified
+                    wait(timeoutMillis > 0 ? remaining : 0);
+                }
+            } catch (InterruptedException e) {
+                if (item.started == null) {
+                    waiting.remove(item);
+                    throw e;
+                }
+                // Started anyway, so the caller leaves as usual
+                Thread.currentThread().interrupt();
+            }
+        }
+        return item;
+    }
+
+    public synchronized void leave(Item item) {
+        if (running.remove(item)) {
+            startWaiting();
+        }
+    }
+
+    /**
+     * @return Running deployments, longest running first
+     */
+    public synchronized List<Item> getRunning() {
+        return new ArrayList<Item>(running);
+    }
+
+    /**
+     * @return Waiting deployments, in the order they will start
+     */
+    public synchronized List<Item> getWaiting() {
+        return new ArrayList<Item>(waiting);
+    }
+
+    private void startWaiting() {
+        boolean started = false;
+        while (!waiting.isEmpty() && running.size() < maxConcurrent) {
+            Item item = waiting.remove(0);
+            item.started = new Date();
+            running.add(item);
+            started = true;
+        }
+        if (started) {
+            notifyAll();
+        }
+    }
+
+    public static class Item {
+        private final String job;
+        private final int build;
+        private final String pipeline;
+        private final boolean production;
+        private final Date queued = new Date();
+        private volatile Date started;
+
+        private Item(String job, int build, String pipeline, boolean production) {
+            this.job = job;
+            this.build = build;
+            this.pipeline = pipeline;
+            this.production = production;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        public int getBuild() {
+            return build;
+        }
+
+        public String getPipeline() {
+            return pipeline;
+        }
+
+        public boolean isProduction() {
+            return production;
+        }
+
+        public Date getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return Time the deployment started running, or null while it waits
+         */
+        public Date getStarted() {
+            return started;
+        }
+
+        /**
+         * @return Milliseconds spent waiting, so far if still waiting
+         */
+        public long getWaitingMillis() {
+            Date end = started == null ? new Date() : started;
+            return end.getTime() - queued.getTime();
+        }
+    }
+}
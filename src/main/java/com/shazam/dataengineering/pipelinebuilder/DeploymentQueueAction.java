@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page showing the deployments running and waiting in the {@link DeploymentQueue}.
+ * Users see the deployments of the jobs they can read.
+ */
+@Extension
+public class DeploymentQueueAction implements RootAction {
+    public String getIconFileName() {
+        if (!Jenkins.getInstance().hasPermission(Jenkins.READ)) {
+            return null;
+        }
+        return "/plugin/pipeline-builder/icons/pipeline-22x22.png";
+    }
+
+    public String getDisplayName() {
+        return "Deployment Queue";
+    }
+
+    public String getUrlName() {
+        return "deployment-queue";
+    }
+
+    public List<DeploymentQueue.Item> getRunning() {
+        return filterReadable(DeploymentQueue.getInstance().getRunning());
+    }
+
+    public List<DeploymentQueue.Item> getWaiting() {
+        return filterReadable(DeploymentQueue.getInstance().getWaiting());
+    }
+
+    public int getMaxConcurrent() {
+        return DeploymentQueue.getInstance().getMaxConcurrent();
+    }
+
+    private List<DeploymentQueue.Item> filterReadable(List<DeploymentQueue.Item> items) {
+        Jenkins jenkins = Jenkins.getInstance();
+        jenkins.checkPermission(Jenkins.READ);
+        ArrayList<DeploymentQueue.Item> readable = new ArrayList<DeploymentQueue.Item>();
+        for (DeploymentQueue.Item item : items) {
+            Item job = jenkins.getItemByFullName(item.getJob());
+            if (job != null && job.hasPermission(Item.READ)) {
+                readable.add(item);
+            }
+        }
+        return readable;
+    }
+}
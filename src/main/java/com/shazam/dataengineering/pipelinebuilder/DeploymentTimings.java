@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times the stages of a deployment, one after another.
+ * <p/>
+ * Starting a stage ends the previous one, so a stage that fails is still
+ * recorded with the time spent in it until {@link #stop()} is called.
+ */
+public class DeploymentTimings {
+    public static final String WAIT_FOR_LOCK = "waitForPipelineLock";
+    public static final String WAIT_FOR_QUEUE = "waitForDeploymentQueue";
+    public static final String VALIDATE_STRUCTURE = "validatePipelineStructure";
+    public static final String FIND_OLD_PIPELINE = "findOldPipeline";
+    public static final String CREATE_PIPELINE = "createPipeline";
+    public static final String VALIDATE_DEFINITION = "validatePipelineDefinition";
+    public static final String PUT_DEFINITION = "putPipelineDefinition";
+    public static final String UPLOAD_SCRIPTS = "uploadScripts";
+    public static final String DELETE_PIPELINE = "deletePipeline";
+    public static final String ACTIVATE_PIPELINE = "activatePipeline";
+
+    private final LinkedHashMap<String, Long> timings = new LinkedHashMap<String, Long>();
+    private String stage;
+    private long stageStart;
+
+    public void start(String stage) {
+        stop();
+        this.stage = stage;
+        this.stageStart = System.nanoTime();
+    }
+
+    public void stop() {
+        if (stage != null) {
+            long millis = (System.nanoTime() - stageStart) / 1000000L;
+            Long previous = timings.get(stage);
+            timings.put(stage, previous == null ? millis : previous + millis);
+            stage = null;
+        }
+    }
+
+    /**
+     * @return Milliseconds spent in each finished stage, in the order the stages ran
+     */
+    public Map<String, Long> getTimings() {
+        return new LinkedHashMap<String, Long>(timings);
+    }
+}
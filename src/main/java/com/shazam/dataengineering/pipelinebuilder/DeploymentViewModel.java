@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of what the deploy pages show about the artifacts of a build:
+ * the deployable pipelines, their schedule dates, dependency analyses and diffs.
+ * <p/>
+ * Built once by reading the artifacts, so that rendering the pages does no I/O.
+ */
+public class DeploymentViewModel {
+    private final List<String> pipelines;
+    private final Map<String, String> scheduleDates;
+    private final Map<String, PipelineAnalysis> analyses;
+    private final Map<String, PipelineDiff> diffs;
+    private final String defaultPipeline;
+
+    private DeploymentViewModel(List<String> pipelines, Map<String, String> scheduleDates,
+                                Map<String, PipelineAnalysis> analyses, Map<String, PipelineDiff> diffs,
+                                String defaultPipeline) {
+        this.pipelines = Collections.unmodifiableList(pipelines);
+        this.scheduleDates = Collections.unmodifiableMap(scheduleDates);
+        this.analyses = Collections.unmodifiableMap(analyses);
+        this.diffs = Collections.unmodifiableMap(diffs);
+        this.defaultPipeline = defaultPipeline;
+    }
+
+    public static DeploymentViewModel create(List<? extends Run.Artifact> artifacts) {
+        ArrayList<String> pipelines = new ArrayList<String>();
+        HashMap<String, String> scheduleDates = new HashMap<String, String>();
+        HashMap<String, PipelineAnalysis> analyses = new HashMap<String, PipelineAnalysis>();
+        HashMap<String, PipelineDiff> diffs = new HashMap<String, PipelineDiff>();
+        String defaultPipeline = null;
+
+        HashMap<String, Run.Artifact> artifactsByName = new HashMap<String, Run.Artifact>();
+        if (artifacts != null) {
+            for (Run.Artifact artifact : artifacts) {
+                artifactsByName.put(artifact.getFileName(), artifact);
+            }
+
+            for (Run.Artifact artifact : artifacts) {
+                String name = artifact.getFileName();
+                if (!isPipelineArtifact(name)) {
+                    continue;
+                }
+
+                PipelineObject pipeline = new PipelineObject(read(artifact));
+                if (!pipeline.isValid()) {
+                    continue;
+                }
+                pipelines.add(name);
+                scheduleDates.put(name, pipeline.getObjects() == null ? "" : pipeline.getScheduleDate());
+                // Any pipeline will do when none has been chosen yet, as before
+                defaultPipeline = name;
+
+                Run.Artifact analysis = artifactsByName.get(name.replace(".json", PipelineAnalysis.ARTIFACT_SUFFIX));
+                if (analysis != null) {
+                    try {
+                        analyses.put(name, PipelineAnalysis.fromJSON(read(analysis)));
+                    } catch (ParseException e) {
+                        // Leave out, the page shows nothing for this pipeline
+                    }
+                }
+
+                Run.Artifact diff = artifactsByName.get(name.replace(".json", PipelineDiff.ARTIFACT_SUFFIX));
+                if (diff != null) {
+                    try {
+                        diffs.put(name, PipelineDiff.fromJSON(read(diff)));
+                    } catch (ParseException e) {
+                        // Leave out, the page shows nothing for this pipeline
+                    }
+                }
+            }
+        }
+
+        return new DeploymentViewModel(pipelines, scheduleDates, analyses, diffs, defaultPipeline);
+    }
+
+    /**
+     * Pipeline definitions are the JSON artifacts other than the analysis, diff and metrics written next to them.
+     */
+    static boolean isPipelineArtifact(String fileName) {
+        return fileName.endsWith(".json")
+                && !fileName.endsWith(PipelineAnalysis.ARTIFACT_SUFFIX)
+                && !fileName.endsWith(PipelineDiff.ARTIFACT_SUFFIX)
+                && !fileName.endsWith(BuildPhaseTimings.ARTIFACT_SUFFIX);
+    }
+
+    private static String read(Run.Artifact artifact) {
+        try {
+            return new FilePath(artifact.getFile()).readToString();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    public List<String> getPipelines() {
+        return pipelines;
+    }
+
+    /**
+     * @param pipeline Pipeline artifact name, or null for the default pipeline
+     * @return Schedule start date of the pipeline, or an empty string if unknown
+     */
+    public String getScheduleDate(String pipeline) {
+        String date = scheduleDates.get(pipeline == null ? defaultPipeline : pipeline);
+        return date == null ? "" : date;
+    }
+
+    public PipelineAnalysis getAnalysis(String pipeline) {
+        return analyses.get(pipeline);
+    }
+
+    public PipelineDiff getDiff(String pipeline) {
+        return diffs.get(pipeline);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes DOT representation of the whole pipeline, not just the activities.
+ * <p/>
+ * Objects are grouped into one cluster per type. When more than
+ * fanOutLimit references share a field and either end, e.g. every
+ * activity pointing at the same schedule, they are drawn as a single
+ * edge to or from the cluster, labelled with the number of references.
+ * <p/>
+ * Objects are read straight from the parsed JSON and output is written as
+ * it is generated, so memory use is proportional to the number of objects
+ * and references, not the size of the DOT.
+ */
+public class FullGraphWriter {
+    public static final int DEFAULT_FAN_OUT_LIMIT = 10;
+    private static final String DEFAULT_OBJECT_ID = "Default";
+    private static final String UNTYPED = "Untyped";
+
+    private final int fanOutLimit;
+
+    public FullGraphWriter() {
+        this(DEFAULT_FAN_OUT_LIMIT);
+    }
+
+    public FullGraphWriter(int fanOutLimit) {
+        this.fanOutLimit = fanOutLimit;
+    }
+
+    public void writeDOT(Writer writer, PipelineObject pipeline) throws IOException {
+        ArrayList<JSONObject> objects = new ArrayList<JSONObject>();
+        JSONArray objectArray = pipeline.getObjects();
+        if (objectArray != null) {
+            for (Object object : objectArray) {
+                if (object instanceof JSONObject) {
+                    objects.add((JSONObject) object);
+                }
+            }
+        }
+
+        int size = objects.size();
+        String[] types = new String[size];
+        HashMap<String, Integer> idToIndex = new HashMap<String, Integer>();
+        // Insertion order keeps the output stable between builds
+        LinkedHashMap<String, List<Integer>> clusters = new LinkedHashMap<String, List<Integer>>();
+
+        for (int i = 0; i < size; i++) {
+            JSONObject object = objects.get(i);
+            String id = getString(object, "id");
+            types[i] = getType(id, object);
+            if (!idToIndex.containsKey(id)) {
+                idToIndex.put(id, i);
+            }
+            List<Integer> members = clusters.get(types[i]);
+            if (members == null) {
+                members = new ArrayList<Integer>();
+                clusters.put(types[i], members);
+            }
+            members.add(i);
+        }
+
+        HashMap<String, Integer> clusterIndex = new HashMap<String, Integer>();
+        for (String type : clusters.keySet()) {
+            clusterIndex.put(type, clusterIndex.size());
+        }
+
+        ArrayList<Reference> references = new ArrayList<Reference>();
+        for (int i = 0; i < size; i++) {
+            for (Object entry : objects.get(i).entrySet()) {
+                String key = (String) ((Map.Entry) entry).getKey();
+                if (!key.equals("id") && !key.equals("name")) {
+                    collectReferences(i, key, ((Map.Entry) entry).getValue(), idToIndex, types, references);
+                }
+            }
+        }
+
+        HashMap<String, Integer> fanIn = new HashMap<String, Integer>();
+        HashMap<String, Integer> fanOut = new HashMap<String, Integer>();
+        for (Reference reference : references) {
+            increment(fanIn, reference.fanInKey);
+            increment(fanOut, reference.fanOutKey);
+        }
+
+        BufferedWriter out = new BufferedWriter(writer);
+        out.write("digraph pipeline {\n");
+        out.write("  compound=true;\n");
+        out.write("  node [shape=box];\n");
+
+        for (Map.Entry<String, List<Integer>> cluster : clusters.entrySet()) {
+            out.write("  subgraph cluster_" + clusterIndex.get(cluster.getKey()) + " {\n");
+            out.write("    label=\"" + escape(cluster.getKey()) + " (" + cluster.getValue().size() + ")\";\n");
+            for (int index : cluster.getValue()) {
+                out.write("    " + index + " [label=\"" + escape(getLabel(objects.get(index))) + "\"];\n");
+            }
+            out.write("  }\n");
+        }
+
+        HashSet<String> written = new HashSet<String>();
+        for (Reference reference : references) {
+            int inCount = fanIn.get(reference.fanInKey);
+            int outCount = fanOut.get(reference.fanOutKey);
+            String sourceType = types[reference.from];
+            String targetType = types[reference.to];
+
+            if (inCount > fanOutLimit) {
+                if (written.add(reference.fanInKey)) {
+                    String tail = sourceType.equals(targetType) ? null
+                            : "ltail=cluster_" + clusterIndex.get(sourceType);
+                    writeEdge(out, reference, reference.label + " (x" + inCount + ")", tail);
+                }
+            } else if (outCount > fanOutLimit) {
+                if (written.add(reference.fanOutKey)) {
+                    String head = sourceType.equals(targetType) ? null
+                            : "lhead=cluster_" + clusterIndex.get(targetType);
+                    writeEdge(out, reference, reference.label + " (x" + outCount + ")", head);
+                }
+            } else {
+                writeEdge(out, reference, reference.label, null);
+            }
+        }
+
+        out.write("}\n");
+        out.flush();
+    }
+
+    private void writeEdge(Writer out, Reference reference, String label, String attribute) throws IOException {
+        out.write("  " + reference.from + " -> " + reference.to + " [label=\"" + escape(label) + "\"");
+        if (attribute != null) {
+            out.write(", " + attribute);
+        }
+        out.write("];\n");
+    }
+
+    private void collectReferences(int from, String key, Object value, Map<String, Integer> idToIndex,
+                                   String[] types, List<Reference> references) {
+        if (value instanceof JSONArray) {
+            for (Object item : (JSONArray) value) {
+                collectReferences(from, key, item, idToIndex, types, references);
+            }
+        } else if (value instanceof JSONObject) {
+            Object ref = ((JSONObject) value).get("ref");
+            Integer to = ref instanceof String ? idToIndex.get(ref) : null;
+            if (to != null) {
+                references.add(new Reference(from, to, key, types));
+            }
+        }
+    }
+
+    private String getType(String id, JSONObject object) {
+        if (DEFAULT_OBJECT_ID.equals(id)) {
+            return DEFAULT_OBJECT_ID;
+        }
+        String type = getString(object, "type");
+        return type == null ? UNTYPED : type;
+    }
+
+    private String getLabel(JSONObject object) {
+        String id = String.valueOf(getString(object, "id"));
+        String name = getString(object, "name");
+        if (name != null && !name.isEmpty() && !name.equals(id)) {
+            return name + "\nID: " + id;
+        } else {
+            return id;
+        }
+    }
+
+    private static String getString(JSONObject object, String key) {
+        Object value = object.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private static String escape(String input) {
+        return input.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Reference from one object to another, with the keys of the fan-in and
+     * fan-out groups it belongs to.
+     */
+    private static class Reference {
+        private final int from;
+        private final int to;
+        private final String label;
+        private final String fanInKey;
+        private final String fanOutKey;
+
+        private Reference(int from, int to, String label, String[] types) {
+            this.from = from;
+            this.to = to;
+            this.label = label;
+            this.fanInKey = "in\u0000" + types[from] + "\u0000" + label + "\u0000" + to;
+            this.fanOutKey = "out\u0000" + from + "\u0000" + label + "\u0000" + types[to];
+        }
+    }
+}
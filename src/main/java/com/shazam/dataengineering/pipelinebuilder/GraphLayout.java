@@ -0,0 +1,466 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Layered (Sugiyama style) layout of a directed graph, used to draw the
+ * pipeline without the external Graphviz binaries.
+ * <p/>
+ * Steps: break cycles by reversing back edges, assign layers by longest path,
+ * split long edges with dummy nodes, reduce crossings with barycenter sweeps,
+ * and finally assign coordinates. Edges point down, from tail to head.
+ */
+public class GraphLayout {
+    public static final int CHAR_WIDTH = 7;
+    public static final int LINE_HEIGHT = 14;
+    public static final int PADDING = 8;
+    public static final int NODE_SPACING = 30;
+    public static final int LAYER_SPACING = 60;
+    public static final int MARGIN = 20;
+
+    private static final int ORDERING_SWEEPS = 8;
+    private static final int POSITIONING_SWEEPS = 4;
+
+    private final List<String[]> labels = new ArrayList<String[]>();
+    private final List<int[]> edges = new ArrayList<int[]>();
+    private final List<String> edgeLabels = new ArrayList<String>();
+
+    // Computed layout, real nodes first followed by dummy nodes
+    private int nodeCount;
+    private int[] layer;
+    private double[] x;
+    private double[] y;
+    private double[] width;
+    private double[] height;
+    private List<int[]> edgePaths;
+    private boolean[] reversed;
+    private double totalWidth;
+    private double totalHeight;
+
+    /**
+     * @param label Node label, lines separated by \n
+     * @return Index of the new node
+     */
+    public int addNode(String label) {
+        labels.add(label.split("\n"));
+        return labels.size() - 1;
+    }
+
+    public void addEdge(int from, int to, String label) {
+        edges.add(new int[]{from, to});
+        edgeLabels.add(label);
+    }
+
+    public GraphLayout layout() {
+        int n = labels.size();
+        reversed = new boolean[edges.size()];
+        breakCycles(n);
+        assignLayers(n);
+        insertDummyNodes(n);
+        List<List<Integer>> layers = orderLayers();
+        assignCoordinates(layers);
+        return this;
+    }
+
+    public int getNodeCount() {
+        return labels.size();
+    }
+
+    public String[] getLabel(int node) {
+        return labels.get(node);
+    }
+
+    public int getEdgeCount() {
+        return edges.size();
+    }
+
+    public String getEdgeLabel(int edge) {
+        return edgeLabels.get(edge);
+    }
+
+    /** Left edge of the node box */
+    public double getX(int node) {
+        return x[node] - width[node] / 2;
+    }
+
+    /** Top edge of the node box */
+    public double getY(int node) {
+        return y[node] - height[node] / 2;
+    }
+
+    public double getWidth(int node) {
+        return width[node];
+    }
+
+    public double getHeight(int node) {
+        return height[node];
+    }
+
+    public double getTotalWidth() {
+        return totalWidth;
+    }
+
+    public double getTotalHeight() {
+        return totalHeight;
+    }
+
+    /**
+     * Points of the edge polyline, from the tail to the head of the original edge.
+     *
+     * @return Flattened x, y coordinates
+     */
+    public double[] getEdgePoints(int edge) {
+        int[] path = edgePaths.get(edge);
+        int from = edges.get(edge)[0];
+        int to = edges.get(edge)[1];
+        if (from == to) {
+            // Self loop, drawn as a small hook on the right side of the node
+            double right = x[from] + width[from] / 2;
+            return new double[]{
+                    right, y[from] - height[from] / 4,
+                    right + NODE_SPACING / 2, y[from] - height[from] / 4,
+                    right + NODE_SPACING / 2, y[from] + height[from] / 4,
+                    right, y[from] + height[from] / 4};
+        }
+
+        double[] points = new double[path.length * 2];
+        for (int i = 0; i < path.length; i++) {
+            int node = path[reversed[edge] ? path.length - 1 - i : i];
+            points[i * 2] = x[node];
+            points[i * 2 + 1] = y[node];
+        }
+
+        // Clip the ends to the node boxes
+        int last = points.length - 2;
+        points[1] += direction(points[1], points[3]) * height[from] / 2;
+        points[last + 1] -= direction(points[last - 1], points[last + 1]) * height[to] / 2;
+        return points;
+    }
+
+    private static double direction(double a, double b) {
+        return b >= a ? 1 : -1;
+    }
+
+    /**
+     * Reverse edges that close a cycle, found with an iterative depth first search.
+     */
+    private void breakCycles(int n) {
+        List<List<Integer>> outgoing = new ArrayList<List<Integer>>();
+        for (int i = 0; i < n; i++) {
+            outgoing.add(new ArrayList<Integer>());
+        }
+        for (int e = 0; e < edges.size(); e++) {
+            outgoing.get(edges.get(e)[0]).add(e);
+        }
+
+        // 0 = unvisited, 1 = on stack, 2 = done
+        int[] state = new int[n];
+        int[] stack = new int[n];
+        int[] next = new int[n];
+        for (int root = 0; root < n; root++) {
+            if (state[root] != 0) {
+                continue;
+            }
+
+            int depth = 0;
+            stack[0] = root;
+            state[root] = 1;
+            while (depth >= 0) {
+                int node = stack[depth];
+                if (next[node] < outgoing.get(node).size()) {
+                    int e = outgoing.get(node).get(next[node]++);
+                    int target = edges.get(e)[1];
+                    if (state[target] == 1) {
+                        reversed[e] = true;
+                    } else if (state[target] == 0) {
+                        state[target] = 1;
+                        stack[++depth] = target;
+                    }
+                } else {
+                    state[node] = 2;
+                    depth--;
+                }
+            }
+        }
+    }
+
+    private int tail(int e) {
+        return edges.get(e)[reversed[e] ? 1 : 0];
+    }
+
+    private int head(int e) {
+        return edges.get(e)[reversed[e] ? 0 : 1];
+    }
+
+    /**
+     * Longest path layering over the now acyclic graph, in topological order.
+     */
+    private void assignLayers(int n) {
+        int[] inDegree = new int[n];
+        List<List<Integer>> outgoing = new ArrayList<List<Integer>>();
+        for (int i = 0; i < n; i++) {
+            outgoing.add(new ArrayList<Integer>());
+        }
+        for (int e = 0; e < edges.size(); e++) {
+            if (tail(e) != head(e)) {
+                outgoing.get(tail(e)).add(head(e));
+                inDegree[head(e)]++;
+            }
+        }
+
+        layer = new int[n];
+        int[] queue = new int[n];
+        int start = 0;
+        int end = 0;
+        for (int i = 0; i < n; i++) {
+            if (inDegree[i] == 0) {
+                queue[end++] = i;
+            }
+        }
+        while (start < end) {
+            int node = queue[start++];
+            for (int target : outgoing.get(node)) {
+                layer[target] = Math.max(layer[target], layer[node] + 1);
+                if (--inDegree[target] == 0) {
+                    queue[end++] = target;
+                }
+            }
+        }
+    }
+
+    private void insertDummyNodes(int n) {
+        List<Integer> layers = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            layers.add(layer[i]);
+        }
+
+        edgePaths = new ArrayList<int[]>();
+        for (int e = 0; e < edges.size(); e++) {
+            int from = tail(e);
+            int to = head(e);
+            if (from == to) {
+                edgePaths.add(new int[]{from, to});
+                continue;
+            }
+
+            int span = layers.get(to) - layers.get(from);
+            int[] path = new int[span + 1];
+            path[0] = from;
+            for (int i = 1; i < span; i++) {
+                path[i] = layers.size();
+                layers.add(layers.get(from) + i);
+            }
+            path[span] = to;
+            edgePaths.add(path);
+        }
+
+        nodeCount = layers.size();
+        layer = new int[nodeCount];
+        width = new double[nodeCount];
+        height = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            layer[i] = layers.get(i);
+            if (i < n) {
+                int longest = 0;
+                for (String line : labels.get(i)) {
+                    longest = Math.max(longest, line.length());
+                }
+                width[i] = longest * CHAR_WIDTH + 2 * PADDING;
+                height[i] = labels.get(i).length * LINE_HEIGHT + 2 * PADDING;
+            }
+        }
+    }
+
+    /**
+     * Order nodes in each layer, alternating downward and upward barycenter sweeps.
+     */
+    private List<List<Integer>> orderLayers() {
+        int layerCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            layerCount = Math.max(layerCount, layer[i] + 1);
+        }
+
+        List<List<Integer>> layers = new ArrayList<List<Integer>>();
+        for (int i = 0; i < layerCount; i++) {
+            layers.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            layers.get(layer[i]).add(i);
+        }
+
+        List<List<Integer>> up = new ArrayList<List<Integer>>();
+        List<List<Integer>> down = new ArrayList<List<Integer>>();
+        for (int i = 0; i < nodeCount; i++) {
+            up.add(new ArrayList<Integer>());
+            down.add(new ArrayList<Integer>());
+        }
+        for (int[] path : edgePaths) {
+            for (int i = 0; i + 1 < path.length; i++) {
+                if (path[i] != path[i + 1]) {
+                    down.get(path[i]).add(path[i + 1]);
+                    up.get(path[i + 1]).add(path[i]);
+                }
+            }
+        }
+
+        final double[] position = new double[nodeCount];
+        // Reused by every layer, each sort only reads the entries of the nodes it orders
+        final double[] barycenter = new double[nodeCount];
+        Comparator<Integer> byBarycenter = new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(barycenter[a], barycenter[b]);
+            }
+        };
+        updatePositions(layers, position);
+        for (int sweep = 0; sweep < ORDERING_SWEEPS; sweep++) {
+            boolean downward = sweep % 2 == 0;
+            for (int l = 0; l < layerCount; l++) {
+                List<Integer> current = layers.get(downward ? l : layerCount - 1 - l);
+                List<List<Integer>> neighbours = downward ? up : down;
+                for (int node : current) {
+                    List<Integer> adjacent = neighbours.get(node);
+                    if (adjacent.isEmpty()) {
+                        barycenter[node] = position[node];
+                    } else {
+                        double sum = 0;
+                        for (int other : adjacent) {
+                            sum += position[other];
+                        }
+                        barycenter[node] = sum / adjacent.size();
+                    }
+                }
+
+                Collections.sort(current, byBarycenter);
+                for (int i = 0; i < current.size(); i++) {
+                    position[current.get(i)] = i;
+                }
+            }
+        }
+
+        return layers;
+    }
+
+    private void updatePositions(List<List<Integer>> layers, double[] position) {
+        for (List<Integer> nodes : layers) {
+            for (int i = 0; i < nodes.size(); i++) {
+                position[nodes.get(i)] = i;
+            }
+        }
+    }
+
+    /**
+     * Pack each layer left to right, then pull nodes towards the average position
+     * of their neighbours while keeping the order and spacing within the layer.
+     */
+    private void assignCoordinates(List<List<Integer>> layers) {
+        x = new double[nodeCount];
+        y = new double[nodeCount];
+
+        List<List<Integer>> neighbours = new ArrayList<List<Integer>>();
+        for (int i = 0; i < nodeCount; i++) {
+            neighbours.add(new ArrayList<Integer>());
+        }
+        for (int[] path : edgePaths) {
+            for (int i = 0; i + 1 < path.length; i++) {
+                if (path[i] != path[i + 1]) {
+                    neighbours.get(path[i]).add(path[i + 1]);
+                    neighbours.get(path[i + 1]).add(path[i]);
+                }
+            }
+        }
+
+        double top = MARGIN;
+        for (List<Integer> nodes : layers) {
+            double layerHeight = 0;
+            for (int node : nodes) {
+                layerHeight = Math.max(layerHeight, height[node]);
+            }
+            double left = MARGIN;
+            for (int node : nodes) {
+                x[node] = left + width[node] / 2;
+                y[node] = top + layerHeight / 2;
+                left += width[node] + NODE_SPACING;
+            }
+            top += layerHeight + LAYER_SPACING;
+        }
+
+        double[] desired = new double[nodeCount];
+        for (int sweep = 0; sweep < POSITIONING_SWEEPS; sweep++) {
+            for (List<Integer> nodes : layers) {
+                for (int node : nodes) {
+                    List<Integer> adjacent = neighbours.get(node);
+                    if (adjacent.isEmpty()) {
+                        desired[node] = x[node];
+                    } else {
+                        double sum = 0;
+                        for (int other : adjacent) {
+                            sum += x[other];
+                        }
+                        desired[node] = sum / adjacent.size();
+                    }
+                }
+                place(nodes, desired);
+            }
+        }
+
+        // Shift everything so the leftmost box starts at the margin
+        double minX = Double.MAX_VALUE;
+        double maxX = 0;
+        double maxY = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            minX = Math.min(minX, x[i] - width[i] / 2);
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            x[i] += MARGIN - minX;
+            maxX = Math.max(maxX, x[i] + width[i] / 2);
+            maxY = Math.max(maxY, y[i] + height[i] / 2);
+        }
+        totalWidth = nodeCount == 0 ? 2 * MARGIN : maxX + MARGIN + NODE_SPACING;
+        totalHeight = nodeCount == 0 ? 2 * MARGIN : maxY + MARGIN;
+    }
+
+    /**
+     * Move nodes of a single layer as close as possible to their desired positions,
+     * resolving overlaps by pushing nodes right and then left.
+     */
+    private void place(List<Integer> nodes, double[] desired) {
+        int size = nodes.size();
+        double[] placed = new double[size];
+        for (int i = 0; i < size; i++) {
+            int node = nodes.get(i);
+            placed[i] = desired[node];
+            if (i > 0) {
+                int previous = nodes.get(i - 1);
+                double minimum = placed[i - 1] + (width[previous] + width[node]) / 2 + NODE_SPACING;
+                placed[i] = Math.max(placed[i], minimum);
+            }
+        }
+        for (int i = size - 2; i >= 0; i--) {
+            int node = nodes.get(i);
+            int following = nodes.get(i + 1);
+            double maximum = placed[i + 1] - (width[node] + width[following]) / 2 - NODE_SPACING;
+            placed[i] = Math.min(placed[i], maximum);
+        }
+        for (int i = 0; i < size; i++) {
+            x[nodes.get(i)] = placed[i];
+        }
+    }
+}
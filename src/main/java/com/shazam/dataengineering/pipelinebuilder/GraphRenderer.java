@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Draws a {@link GraphLayout} as SVG or PNG, in plain Java.
+ */
+public class GraphRenderer {
+    private static final int ARROW_SIZE = 8;
+    private static final Color NODE_FILL = new Color(0xEE, 0xF3, 0xFA);
+    private static final Color STROKE = new Color(0x33, 0x33, 0x33);
+    private static final Color EDGE_LABEL = new Color(0x66, 0x66, 0x66);
+
+    private GraphLayout layout;
+
+    public GraphRenderer(GraphLayout layout) {
+        this.layout = layout;
+    }
+
+    public void writeSVG(Writer writer) {
+        PrintWriter svg = new PrintWriter(writer);
+        svg.printf(Locale.ENGLISH,
+                "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%.0f\" height=\"%.0f\" "
+                        + "font-family=\"monospace\" font-size=\"12\">%n",
+                layout.getTotalWidth(), layout.getTotalHeight());
+        svg.println("<defs><marker id=\"arrow\" markerWidth=\"10\" markerHeight=\"10\" refX=\"9\" refY=\"5\" "
+                + "orient=\"auto\" markerUnits=\"userSpaceOnUse\"><path d=\"M0,1 L9,5 L0,9 z\" fill=\"#333\"/>"
+                + "</marker></defs>");
+
+        for (int e = 0; e < layout.getEdgeCount(); e++) {
+            double[] points = layout.getEdgePoints(e);
+            svg.print("<polyline fill=\"none\" stroke=\"#333\" marker-end=\"url(#arrow)\" points=\"");
+            for (int i = 0; i < points.length; i += 2) {
+                svg.printf(Locale.ENGLISH, "%s%.1f,%.1f", i == 0 ? "" : " ", points[i], points[i + 1]);
+            }
+            svg.println("\"/>");
+
+            String label = layout.getEdgeLabel(e);
+            if (label != null && !label.isEmpty()) {
+                double[] middle = getLabelPosition(points);
+                svg.printf(Locale.ENGLISH, "<text x=\"%.1f\" y=\"%.1f\" fill=\"#666\">%s</text>%n",
+                        middle[0] + 4, middle[1], escape(label));
+            }
+        }
+
+        for (int node = 0; node < layout.getNodeCount(); node++) {
+            double x = layout.getX(node);
+            double y = layout.getY(node);
+            svg.printf(Locale.ENGLISH,
+                    "<rect x=\"%.1f\" y=\"%.1f\" width=\"%.1f\" height=\"%.1f\" rx=\"4\" fill=\"#eef3fa\" stroke=\"#333\"/>%n",
+                    x, y, layout.getWidth(node), layout.getHeight(node));
+            String[] lines = layout.getLabel(node);
+            for (int i = 0; i < lines.length; i++) {
+                svg.printf(Locale.ENGLISH, "<text x=\"%.1f\" y=\"%.1f\">%s</text>%n",
+                        x + GraphLayout.PADDING,
+                        y + GraphLayout.PADDING + (i + 1) * GraphLayout.LINE_HEIGHT - 3,
+                        escape(lines[i]));
+            }
+        }
+
+        svg.println("</svg>");
+        svg.flush();
+    }
+
+    /**
+     * Render to PNG. Requires java.awt, which works headless but may be missing fonts
+     * on minimal installations, so callers should be ready for this to fail.
+     */
+    public void writePNG(OutputStream output) throws IOException {
+        int width = (int) Math.ceil(layout.getTotalWidth());
+        int height = (int) Math.ceil(layout.getTotalHeight());
+        BufferedImage image = new BufferedImage(Math.max(width, 1), Math.max(height, 1), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            graphics.setStroke(new BasicStroke(1));
+
+            for (int e = 0; e < layout.getEdgeCount(); e++) {
+                double[] points = layout.getEdgePoints(e);
+                Path2D.Double path = new Path2D.Double();
+                path.moveTo(points[0], points[1]);
+                for (int i = 2; i < points.length; i += 2) {
+                    path.lineTo(points[i], points[i + 1]);
+                }
+                graphics.setColor(STROKE);
+                graphics.draw(path);
+                drawArrowHead(graphics, points);
+
+                String label = layout.getEdgeLabel(e);
+                if (label != null && !label.isEmpty()) {
+                    double[] middle = getLabelPosition(points);
+                    graphics.setColor(EDGE_LABEL);
+                    graphics.drawString(label, (float) middle[0] + 4, (float) middle[1]);
+                }
+            }
+
+            for (int node = 0; node < layout.getNodeCount(); node++) {
+                int x = (int) layout.getX(node);
+                int y = (int) layout.getY(node);
+                int w = (int) layout.getWidth(node);
+                int h = (int) layout.getHeight(node);
+                graphics.setColor(NODE_FILL);
+                graphics.fillRoundRect(x, y, w, h, 8, 8);
+                graphics.setColor(STROKE);
+                graphics.drawRoundRect(x, y, w, h, 8, 8);
+                String[] lines = layout.getLabel(node);
+                for (int i = 0; i < lines.length; i++) {
+                    graphics.drawString(lines[i],
+                            x + GraphLayout.PADDING,
+                            y + GraphLayout.PADDING + (i + 1) * GraphLayout.LINE_HEIGHT - 3);
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        ImageIO.write(image, "png", output);
+    }
+
+    private void drawArrowHead(Graphics2D graphics, double[] points) {
+        int last = points.length - 2;
+        double angle = Math.atan2(points[last + 1] - points[last - 1], points[last] - points[last - 2]);
+        Path2D.Double head = new Path2D.Double();
+        head.moveTo(points[last], points[last + 1]);
+        head.lineTo(points[last] - ARROW_SIZE * Math.cos(angle - Math.PI / 6),
+                points[last + 1] - ARROW_SIZE * Math.sin(angle - Math.PI / 6));
+        head.lineTo(points[last] - ARROW_SIZE * Math.cos(angle + Math.PI / 6),
+                points[last + 1] - ARROW_SIZE * Math.sin(angle + Math.PI / 6));
+        head.closePath();
+        graphics.fill(head);
+    }
+
+    private double[] getLabelPosition(double[] points) {
+        int segment = (points.length / 2 - 1) / 2;
+        return new double[]{
+                (points[segment * 2] + points[segment * 2 + 2]) / 2,
+                (points[segment * 2 + 1] + points[segment * 2 + 3]) / 2};
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -15,140 +15,80 @@
  */
 package com.shazam.dataengineering.pipelinebuilder;
 
-import com.amazonaws.services.datapipeline.model.Field;
-import org.jgrapht.ext.DOTExporter;
-import org.jgrapht.ext.EdgeNameProvider;
-import org.jgrapht.ext.IntegerNameProvider;
-import org.jgrapht.ext.VertexNameProvider;
-import org.jgrapht.graph.ClassBasedEdgeFactory;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.DirectedMultigraph;
-
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
 import java.io.Writer;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Set;
 
 /**
  * Class responsible for writing out DOT representation of the pipeline.
  */
 public class GraphWriter {
 
-    @SuppressWarnings("unchecked")
-    public void writeDOT(Writer writer, PipelineObject pipeline) {
-        DirectedMultigraph graph = getGraph(pipeline);
-
-        DOTExporter dot = new DOTExporter(
-                new IntegerNameProvider(),
-                new PipelineVertexNameProvider(),
-                new PipelineEdgeNameProvider()
-        );
-
-        dot.export(writer, graph);
-    }
-
     /**
-     * Build DAG of the pipeline for writing to DOT
-     * Only generates activity information. Full graphs tend to be very noisy.
-     *
-     * @return DirectedMultigraph representation of the pipeline
+     * Write the activity graph in the same format as jgrapht's DOTExporter,
+     * numbering vertices from 1 in definition order.
      */
-    @SuppressWarnings("unchecked")
-    private DirectedMultigraph getGraph(PipelineObject pipeline) {
-        DirectedMultigraph graph = new DirectedMultigraph<com.amazonaws.services.datapipeline.model.PipelineObject, RelationshipEdge>(
-                new ClassBasedEdgeFactory<com.amazonaws.services.datapipeline.model.PipelineObject, RelationshipEdge>(RelationshipEdge.class));
-
-        // Maintain map for easier edge creation
-        HashMap<String, com.amazonaws.services.datapipeline.model.PipelineObject> idToPipeline =
-                new HashMap<String, com.amazonaws.services.datapipeline.model.PipelineObject>();
-
-        List<com.amazonaws.services.datapipeline.model.PipelineObject> awsObjects = pipeline.getAWSObjects();
-        for (com.amazonaws.services.datapipeline.model.PipelineObject awsObject : awsObjects) {
-            // Ignore everything except activities
-            if (!awsObject.getId().equals("Default")) {
-                for (Field field : awsObject.getFields()) {
-                    // Only add activities to the DOT
-                    if (field.getKey().equals("type") && field.getStringValue().contains("Activity")) {
-                        idToPipeline.put(awsObject.getId(), awsObject);
-                        graph.addVertex(awsObject);
-                    }
-                }
-            }
+    public void writeDOT(Writer writer, PipelineObject pipeline) {
+        PipelineGraph graph = getGraph(pipeline);
+        PrintWriter out = new PrintWriter(writer);
+
+        out.println("digraph G {");
+        for (int vertex = 0; vertex < graph.getVertexCount(); vertex++) {
+            out.print("  ");
+            out.print(vertex + 1);
+            out.print(" [ label=\"");
+            out.print(graph.getVertexLabel(vertex));
+            out.println("\" ];");
         }
-
-        for (com.amazonaws.services.datapipeline.model.PipelineObject awsObject :
-                (Set<com.amazonaws.services.datapipeline.model.PipelineObject>) graph.vertexSet()) {
-            List<Field> fields = awsObject.getFields();
-            for (Field field : fields) {
-                if (field.getRefValue() != null && idToPipeline.containsKey(field.getRefValue())) {
-                    graph.addEdge(awsObject, idToPipeline.get(field.getRefValue()),
-                            new RelationshipEdge<com.amazonaws.services.datapipeline.model.PipelineObject>(
-                                    awsObject,
-                                    idToPipeline.get(field.getRefValue()),
-                                    field.getKey()
-                            ));
-                }
-            }
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            out.print("  ");
+            out.print(graph.getEdgeSource(edge) + 1);
+            out.print(" -> ");
+            out.print(graph.getEdgeTarget(edge) + 1);
+            out.print(" [ label=\"");
+            out.print(graph.getEdgeLabel(edge));
+            out.println("\" ];");
         }
-
-        return graph;
+        out.println("}");
+        out.flush();
     }
 
-    private class PipelineVertexNameProvider
-            implements VertexNameProvider<com.amazonaws.services.datapipeline.model.PipelineObject> {
-        public String getVertexName(com.amazonaws.services.datapipeline.model.PipelineObject object) {
-            if (object == null) {
-                return "none";
-            } else if (object.getName() != null && !object.getName().isEmpty()) {
-                String label = object.getName() + "\nID: " + object.getId();
-                for (Field field : object.getFields()) {
-                    if (field.getKey().equals("type")) {
-                        label += "\nType: " + field.getStringValue();
-                    }
-                }
-
-                return clean(label);
-            } else {
-                return clean(object.toString());
-            }
-        }
-
-        private String clean(String input) {
-            return input.replaceAll("\"", "\'");
-        }
+    public void writeSVG(Writer writer, PipelineObject pipeline) {
+        new GraphRenderer(getLayout(pipeline)).writeSVG(writer);
     }
 
-    private class PipelineEdgeNameProvider implements EdgeNameProvider<RelationshipEdge> {
-        public String getEdgeName(RelationshipEdge edge) {
-            if (edge == null) {
-                return "none";
-            } else {
-                return edge.toString().replaceAll("\"", "\'");
-            }
-        }
+    public void writePNG(OutputStream output, PipelineObject pipeline) throws IOException {
+        new GraphRenderer(getLayout(pipeline)).writePNG(output);
     }
 
-    public static class RelationshipEdge<V> extends DefaultEdge {
-        private V v1;
-        private V v2;
-        private String label;
+    /**
+     * Lay out the same graph that is written to DOT.
+     *
+     * @return Computed layout of the activity graph
+     */
+    public GraphLayout getLayout(PipelineObject pipeline) {
+        PipelineGraph graph = getGraph(pipeline);
+        GraphLayout layout = new GraphLayout();
 
-        public RelationshipEdge(V v1, V v2, String label) {
-            this.v1 = v1;
-            this.v2 = v2;
-            this.label = label;
+        // Layout nodes are numbered in the order they are added, same as the graph
+        for (int vertex = 0; vertex < graph.getVertexCount(); vertex++) {
+            layout.addNode(graph.getVertexLabel(vertex));
         }
-
-        public V getV1() {
-            return v1;
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            layout.addEdge(graph.getEdgeSource(edge), graph.getEdgeTarget(edge), graph.getEdgeLabel(edge));
         }
 
-        public V getV2() {
-            return v2;
-        }
+        return layout.layout();
+    }
 
-        public String toString() {
-            return label;
-        }
+    /**
+     * Build graph of the pipeline for writing to DOT
+     * Only generates activity information. Full graphs tend to be very noisy.
+     *
+     * @return Compact graph representation of the pipeline
+     */
+    private PipelineGraph getGraph(PipelineObject pipeline) {
+        return PipelineGraph.activities(pipeline.getObjects());
     }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reentrant locks keyed by name.
+ * Locks are created on demand and dropped once nobody holds or waits for them,
+ * so the registry doesn't grow with the number of keys ever used.
+ */
+public class LockRegistry {
+    private final Map<String, Entry> locks = new HashMap<String, Entry>();
+    private final AtomicLong contendedCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public void lock(String key) {
+        Entry entry = use(key);
+        if (!entry.lock.tryLock()) {
+            long start = System.nanoTime();
+            entry.lock.lock();
+            contendedCount.incrementAndGet();
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Wait at most the given time for the lock.
+     *
+     * @return Whether the lock was acquired, it must only be unlocked if it was
+     * @throws InterruptedException if interrupted while waiting, in which case the lock isn't held
+     */
+    public boolean tryLock(String key, long timeout, TimeUnit unit) throws InterruptedException {
+        Entry entry = use(key);
+        boolean locked = false;
+        try {
+            locked = entry.lock.tryLock();
+            if (!locked) {
+                long start = System.nanoTime();
+                locked = entry.lock.tryLock(timeout, unit);
+                contendedCount.incrementAndGet();
+                waitNanos.addAndGet(System.nanoTime() - start);
+            }
+        } finally {
+            if (!locked) {
+                synchronized (locks) {
+                    release(key, entry);
+                }
+            }
+        }
+        return locked;
+    }
+
+    public void unlock(String key) {
+        synchronized (locks) {
+            Entry entry = locks.get(key);
+            if (entry == null) {
+                throw new IllegalMonitorStateException("Lock " + key + " is not held");
+            }
+
+            entry.lock.unlock();
+            release(key, entry);
+        }
+    }
+
+    private Entry use(String key) {
+        synchronized (locks) {
+            Entry entry = locks.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                locks.put(key, entry);
+            }
+            entry.users++;
+            return entry;
+        }
+    }
+
+    // Called holding the registry lock
+    private void release(String key, Entry entry) {
+        entry.users--;
+        if (entry.users == 0) {
+            locks.remove(key);
+        }
+    }
+
+    /**
+     * @return Number of keys currently locked or waited on
+     */
+    public int size() {
+        synchronized (locks) {
+            return locks.size();
+        }
+    }
+
+    /**
+     * @return Number of times a lock was held by another thread when asked for
+     */
+    public long getContendedCount() {
+        return contendedCount.get();
+    }
+
+    /**
+     * @return Total time spent waiting for locks held by other threads
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    private static class Entry {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int users;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dependency analysis of the activities in a pipeline, based on their dependsOn references.
+ * <p/>
+ * For every activity it records the depth (length of the longest chain of
+ * dependencies below it), fan-in (number of activities depending on it) and
+ * fan-out (number of activities it depends on). It also finds dependsOn
+ * cycles and the critical path, i.e. the longest chain of dependencies,
+ * counting every activity as one step as run times are not known up front.
+ * <p/>
+ * Runs in time linear in the number of activities and references.
+ */
+public class PipelineAnalysis {
+    public static final String ARTIFACT_SUFFIX = "-analysis.json";
+    private static final String DEPENDS_ON = "dependsOn";
+
+    private String[] ids;
+    private int[] depth;
+    private int[] fanIn;
+    private int[] fanOut;
+    private List<String> criticalPath;
+    private List<List<String>> cycles;
+
+    private PipelineAnalysis(String[] ids, int[] depth, int[] fanIn, int[] fanOut,
+                             List<String> criticalPath, List<List<String>> cycles) {
+        this.ids = ids;
+        this.depth = depth;
+        this.fanIn = fanIn;
+        this.fanOut = fanOut;
+        this.criticalPath = criticalPath;
+        this.cycles = cycles;
+    }
+
+    public static PipelineAnalysis analyze(PipelineObject pipeline) {
+        return analyze(PipelineGraph.activities(pipeline.getObjects()));
+    }
+
+    static PipelineAnalysis analyze(PipelineGraph graph) {
+        int size = graph.getVertexCount();
+        String[] ids = new String[size];
+        int[] fanIn = new int[size];
+        int[] fanOut = new int[size];
+        for (int vertex = 0; vertex < size; vertex++) {
+            ids[vertex] = graph.getVertexId(vertex);
+        }
+
+        int edgeCount = 0;
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            if (DEPENDS_ON.equals(graph.getEdgeLabel(edge))) {
+                fanOut[graph.getEdgeSource(edge)]++;
+                fanIn[graph.getEdgeTarget(edge)]++;
+                edgeCount++;
+            }
+        }
+
+        // Adjacency arrays in both directions: dependencies of each activity, and its dependents
+        int[] dependencyStart = offsets(fanOut);
+        int[] dependentStart = offsets(fanIn);
+        int[] dependencies = new int[edgeCount];
+        int[] dependents = new int[edgeCount];
+        int[] dependencyFill = Arrays.copyOf(dependencyStart, size);
+        int[] dependentFill = Arrays.copyOf(dependentStart, size);
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            if (DEPENDS_ON.equals(graph.getEdgeLabel(edge))) {
+                int source = graph.getEdgeSource(edge);
+                int target = graph.getEdgeTarget(edge);
+                dependencies[dependencyFill[source]++] = target;
+                dependents[dependentFill[target]++] = source;
+            }
+        }
+
+        // Kahn's algorithm, starting from activities without dependencies
+        int[] depth = new int[size];
+        int[] deepestDependency = new int[size];
+        int[] unresolved = Arrays.copyOf(fanOut, size);
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int vertex = 0; vertex < size; vertex++) {
+            deepestDependency[vertex] = -1;
+            if (unresolved[vertex] == 0) {
+                queue[tail++] = vertex;
+            }
+        }
+        while (head < tail) {
+            int vertex = queue[head++];
+            for (int i = dependentStart[vertex]; i < dependentStart[vertex + 1]; i++) {
+                int dependent = dependents[i];
+                if (deepestDependency[dependent] < 0 || depth[vertex] + 1 > depth[dependent]) {
+                    depth[dependent] = depth[vertex] + 1;
+                    deepestDependency[dependent] = vertex;
+                }
+                if (--unresolved[dependent] == 0) {
+                    queue[tail++] = dependent;
+                }
+            }
+        }
+
+        List<List<String>> cycles = tail < size
+                ? findCycles(ids, unresolved, dependencyStart, dependencies)
+                : Collections.<List<String>>emptyList();
+
+        ArrayList<String> criticalPath = new ArrayList<String>();
+        int deepest = -1;
+        for (int vertex = 0; vertex < size; vertex++) {
+            if (unresolved[vertex] == 0 && (deepest < 0 || depth[vertex] > depth[deepest])) {
+                deepest = vertex;
+            }
+        }
+        for (int vertex = deepest; vertex >= 0; vertex = deepestDependency[vertex]) {
+            criticalPath.add(ids[vertex]);
+        }
+        Collections.reverse(criticalPath);
+
+        return new PipelineAnalysis(ids, depth, fanIn, fanOut, criticalPath, cycles);
+    }
+
+    /**
+     * Every activity left unresolved by the topological sort depends on at least one
+     * other unresolved activity, so following those dependencies must end in a cycle.
+     * Each activity is walked at most once.
+     */
+    private static List<List<String>> findCycles(String[] ids, int[] unresolved,
+                                                 int[] dependencyStart, int[] dependencies) {
+        ArrayList<List<String>> cycles = new ArrayList<List<String>>();
+        int size = ids.length;
+        // 0 = not visited, otherwise the number of the walk that visited the activity
+        int[] walk = new int[size];
+        int[] path = new int[size];
+        int walkNumber = 0;
+
+        for (int start = 0; start < size; start++) {
+            if (unresolved[start] == 0 || walk[start] != 0) {
+                continue;
+            }
+            walkNumber++;
+            int length = 0;
+            int vertex = start;
+            while (walk[vertex] == 0) {
+                walk[vertex] = walkNumber;
+                path[length++] = vertex;
+                vertex = nextUnresolved(vertex, unresolved, dependencyStart, dependencies);
+            }
+
+            if (walk[vertex] == walkNumber) {
+                ArrayList<String> cycle = new ArrayList<String>();
+                int first = 0;
+                while (path[first] != vertex) {
+                    first++;
+                }
+                for (int i = first; i < length; i++) {
+                    cycle.add(ids[path[i]]);
+                }
+                cycle.add(ids[vertex]);
+                cycles.add(cycle);
+            }
+        }
+
+        return cycles;
+    }
+
+    private static int nextUnresolved(int vertex, int[] unresolved, int[] dependencyStart, int[] dependencies) {
+        for (int i = dependencyStart[vertex]; i < dependencyStart[vertex + 1]; i++) {
+            if (unresolved[dependencies[i]] > 0) {
+                return dependencies[i];
+            }
+        }
+        throw new IllegalStateException("Unresolved activity without unresolved dependencies");
+    }
+
+    private static int[] offsets(int[] counts) {
+        int[] offsets = new int[counts.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            offsets[i + 1] = offsets[i] + counts[i];
+        }
+        return offsets;
+    }
+
+    public boolean hasCycles() {
+        return !cycles.isEmpty();
+    }
+
+    /**
+     * @return Cycles as lists of activity ids, with the first activity repeated at the end
+     */
+    public List<List<String>> getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return Activity ids along the critical path, starting with the one that runs first
+     */
+    public List<String> getCriticalPath() {
+        return criticalPath;
+    }
+
+    public int getActivityCount() {
+        return ids.length;
+    }
+
+    public int getMaxDepth() {
+        int max = 0;
+        for (int value : depth) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * @return Id of the activity with most dependents, or null if there are no dependencies
+     */
+    public String getMostDependedOn() {
+        int most = -1;
+        for (int i = 0; i < ids.length; i++) {
+            if (fanIn[i] > 0 && (most < 0 || fanIn[i] > fanIn[most])) {
+                most = i;
+            }
+        }
+        return most < 0 ? null : ids[most];
+    }
+
+    public String toJSONString() {
+        JSONArray activities = new JSONArray();
+        for (int i = 0; i < ids.length; i++) {
+            JSONObject activity = new JSONObject();
+            activity.put("id", ids[i]);
+            activity.put("depth", depth[i]);
+            activity.put("fanIn", fanIn[i]);
+            activity.put("fanOut", fanOut[i]);
+            activities.add(activity);
+        }
+
+        JSONArray cycleArray = new JSONArray();
+        for (List<String> cycle : cycles) {
+            JSONArray cycleIds = new JSONArray();
+            cycleIds.addAll(cycle);
+            cycleArray.add(cycleIds);
+        }
+
+        JSONArray pathArray = new JSONArray();
+        pathArray.addAll(criticalPath);
+
+        JSONObject json = new JSONObject();
+        json.put("activities", activities);
+        json.put("maxDepth", getMaxDepth());
+        json.put("criticalPath", pathArray);
+        json.put("cycles", cycleArray);
+        return json.toJSONString();
+    }
+
+    /**
+     * Read an analysis written by {@link #toJSONString()}.
+     *
+     * @throws ParseException if the JSON is invalid or not an analysis
+     */
+    public static PipelineAnalysis fromJSON(String json) throws ParseException {
+        Object parsed = new JSONParser().parse(json);
+        if (!(parsed instanceof JSONObject) || !(((JSONObject) parsed).get("activities") instanceof JSONArray)) {
+            throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+        }
+        JSONObject object = (JSONObject) parsed;
+
+        JSONArray activities = (JSONArray) object.get("activities");
+        int size = activities.size();
+        String[] ids = new String[size];
+        int[] depth = new int[size];
+        int[] fanIn = new int[size];
+        int[] fanOut = new int[size];
+        for (int i = 0; i < size; i++) {
+            JSONObject activity = (JSONObject) activities.get(i);
+            ids[i] = (String) activity.get("id");
+            depth[i] = getInt(activity, "depth");
+            fanIn[i] = getInt(activity, "fanIn");
+            fanOut[i] = getInt(activity, "fanOut");
+        }
+
+        ArrayList<List<String>> cycles = new ArrayList<List<String>>();
+        if (object.get("cycles") instanceof JSONArray) {
+            for (Object cycle : (JSONArray) object.get("cycles")) {
+                cycles.add(toStringList(cycle));
+            }
+        }
+
+        return new PipelineAnalysis(ids, depth, fanIn, fanOut, toStringList(object.get("criticalPath")), cycles);
+    }
+
+    private static int getInt(JSONObject object, String key) {
+        Object value = object.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static List<String> toStringList(Object array) {
+        ArrayList<String> list = new ArrayList<String>();
+        if (array instanceof JSONArray) {
+            for (Object item : (JSONArray) array) {
+                list.add(String.valueOf(item));
+            }
+        }
+        return list;
+    }
+}
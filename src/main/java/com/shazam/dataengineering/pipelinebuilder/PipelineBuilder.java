@@ -55,12 +55,18 @@ public class PipelineBuilder extends Builder {
     private Environment[] configParams;
     private String file;
     private String s3Prefix;
+    private boolean renderPng;
+
+    public PipelineBuilder(String filePath, String s3Prefix, Environment[] environment) {
+        this(filePath, s3Prefix, environment, false);
+    }
 
     // Fields in config.jelly must match the parameter names in the "DataBoundConstructor"
     @DataBoundConstructor
-    public PipelineBuilder(String filePath, String s3Prefix, Environment[] environment) {
+    public PipelineBuilder(String filePath, String s3Prefix, Environment[] environment, boolean renderPng) {
         this.configParams = environment;
         this.file = filePath;
+        this.renderPng = renderPng;
         setS3Prefix(s3Prefix);
     }
 
@@ -78,6 +84,7 @@ public class PipelineBuilder extends Builder {
             return true;
         }
         processor.setS3Prefix(s3Prefix);
+        processor.setRenderPng(renderPng);
 
         boolean result = processor.process(input);
         if (result) {
@@ -117,6 +124,10 @@ public class PipelineBuilder extends Builder {
         return env;
     }
 
+    public boolean isRenderPng() {
+        return renderPng;
+    }
+
     public String getS3Prefix() {
         return s3Prefix;
     }
@@ -141,6 +152,10 @@ public class PipelineBuilder extends Builder {
      */
     @Extension // This indicates to Jenkins that this is an implementation of an extension point.
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
+        public static final int DEFAULT_FULL_LOG_ENTRIES = 20;
+        public static final int DEFAULT_LOG_SEGMENT_SIZE = 512;
+        public static final int DEFAULT_LOG_SEGMENTS = 10;
+
         /**
          * To persist global configuration information,
          * simply store it in a field and call save().
@@ -150,6 +165,22 @@ public class PipelineBuilder extends Builder {
          */
         public String accessId;
         public String secretKey;
+        /**
+         * Number of most recent deployments that keep their messages when the log is rolled
+         */
+        public int fullLogEntries = DEFAULT_FULL_LOG_ENTRIES;
+        /**
+         * Size of the deployment log, and of the job deployment index, in kilobytes after which it is rolled
+         */
+        public int logSegmentSize = DEFAULT_LOG_SEGMENT_SIZE;
+        /**
+         * Number of rolled segments kept of each deployment log and job deployment index, 0 to keep all
+         */
+        public int logSegments = DEFAULT_LOG_SEGMENTS;
+        /**
+         * Deployments running at once over all jobs, the rest wait in the {@link DeploymentQueue}
+         */
+        public int maxConcurrentDeployments = DeploymentQueue.DEFAULT_MAX_CONCURRENT;
 
         /**
          * In order to load the persisted global configuration, you have to
@@ -157,6 +188,7 @@ public class PipelineBuilder extends Builder {
          */
         public DescriptorImpl() {
             load();
+            DeploymentQueue.getInstance().setMaxConcurrent(maxConcurrentDeployments);
         }
 
         /**
@@ -196,6 +228,11 @@ public class PipelineBuilder extends Builder {
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
             accessId = formData.getString("accessId");
             secretKey = formData.getString("secretKey");
+            fullLogEntries = formData.optInt("fullLogEntries", DEFAULT_FULL_LOG_ENTRIES);
+            logSegmentSize = formData.optInt("logSegmentSize", DEFAULT_LOG_SEGMENT_SIZE);
+            logSegments = formData.optInt("logSegments", DEFAULT_LOG_SEGMENTS);
+            maxConcurrentDeployments = formData.optInt("maxConcurrentDeployments", DeploymentQueue.DEFAULT_MAX_CONCURRENT);
+            DeploymentQueue.getInstance().setMaxConcurrent(maxConcurrentDeployments);
 
             save();
             return super.configure(req, formData);
@@ -208,5 +245,21 @@ public class PipelineBuilder extends Builder {
         public String getSecretKey() {
             return secretKey;
         }
+
+        public int getFullLogEntries() {
+            return fullLogEntries;
+        }
+
+        public int getLogSegmentSize() {
+            return logSegmentSize;
+        }
+
+        public int getLogSegments() {
+            return logSegments;
+        }
+
+        public int getMaxConcurrentDeployments() {
+            return maxConcurrentDeployments;
+        }
     }
 }
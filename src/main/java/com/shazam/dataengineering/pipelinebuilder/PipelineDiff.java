@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Structural difference between two versions of a pipeline: objects added,
+ * removed or modified, and for modified objects which fields changed.
+ * <p/>
+ * Objects are matched by id through a hash map, so the comparison is linear
+ * in the size of the pipelines. Only objects that aren't equal as a whole
+ * are compared field by field.
+ * <p/>
+ * Script URLs contain the name of the pipeline file, and with it the build number.
+ * When both names are known, the previous name in URLs is read as the current one,
+ * so that objects referencing scripts don't show as modified in every build.
+ */
+public class PipelineDiff {
+    public static final String ARTIFACT_SUFFIX = "-diff.json";
+
+    public enum ChangeType {
+        ADDED, REMOVED, MODIFIED
+    }
+
+    private String previousPipeline;
+    private List<Change> changes;
+
+    private PipelineDiff(String previousPipeline, List<Change> changes) {
+        this.previousPipeline = previousPipeline;
+        this.changes = changes;
+    }
+
+    /**
+     * @param previousPipeline Name of the pipeline compared against, for display
+     */
+    public static PipelineDiff compare(PipelineObject previous, PipelineObject current, String previousPipeline) {
+        return compare(previous, current, previousPipeline, null);
+    }
+
+    /**
+     * @param previousPipeline File name of the pipeline compared against, e.g. d1-job-5.json
+     * @param currentPipeline  File name of the current pipeline, or null to compare URLs as they are
+     */
+    public static PipelineDiff compare(PipelineObject previous, PipelineObject current, String previousPipeline,
+                                       String currentPipeline) {
+        String previousSegment = null;
+        String currentSegment = null;
+        if (previousPipeline != null && currentPipeline != null) {
+            previousSegment = "/" + previousPipeline.replace(".json", "") + "/";
+            currentSegment = "/" + currentPipeline.replace(".json", "") + "/";
+        }
+
+        ArrayList<Change> changes = new ArrayList<Change>();
+        List<JSONObject> previousObjects = getObjects(previous);
+        HashMap<Object, JSONObject> previousById = new HashMap<Object, JSONObject>();
+        for (JSONObject object : previousObjects) {
+            previousById.put(object.get("id"), object);
+        }
+
+        for (JSONObject object : getObjects(current)) {
+            Object id = object.get("id");
+            // Whatever is left in the map afterwards has been removed
+            JSONObject previousObject = previousById.remove(id);
+            if (previousObject == null) {
+                changes.add(new Change(ChangeType.ADDED, String.valueOf(id)));
+            } else if (!previousObject.equals(object)) {
+                Change change = compareFields(String.valueOf(id), previousObject, object, previousSegment, currentSegment);
+                // Objects that only differ in the build of their script URLs are left out
+                if (change.hasFieldChanges()) {
+                    changes.add(change);
+                }
+            }
+        }
+
+        for (JSONObject object : previousObjects) {
+            if (previousById.remove(object.get("id")) != null) {
+                changes.add(new Change(ChangeType.REMOVED, String.valueOf(object.get("id"))));
+            }
+        }
+
+        return new PipelineDiff(previousPipeline, changes);
+    }
+
+    private static Change compareFields(String id, JSONObject previous, JSONObject current,
+                                        String previousSegment, String currentSegment) {
+        Change change = new Change(ChangeType.MODIFIED, id);
+        for (Object key : current.keySet()) {
+            if (!previous.containsKey(key)) {
+                change.addedFields.add(key.toString());
+            } else {
+                Object previousValue = normalize(previous.get(key), previousSegment, currentSegment);
+                Object value = current.get(key);
+                if (previousValue == null ? value != null : !previousValue.equals(value)) {
+                    change.modifiedFields.add(key.toString());
+                }
+            }
+        }
+        for (Object key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                change.removedFields.add(key.toString());
+            }
+        }
+        return change;
+    }
+
+    /**
+     * @return The value with the previous pipeline name in URLs replaced by the current one
+     */
+    private static Object normalize(Object value, String previousSegment, String currentSegment) {
+        if (previousSegment == null) {
+            return value;
+        } else if (value instanceof String) {
+            return ((String) value).replace(previousSegment, currentSegment);
+        } else if (value instanceof JSONArray) {
+            JSONArray normalized = new JSONArray();
+            for (Object item : (JSONArray) value) {
+                normalized.add(normalize(item, previousSegment, currentSegment));
+            }
+            return normalized;
+        }
+        return value;
+    }
+
+    private static List<JSONObject> getObjects(PipelineObject pipeline) {
+        ArrayList<JSONObject> objects = new ArrayList<JSONObject>();
+        JSONArray objectArray = pipeline == null ? null : pipeline.getObjects();
+        if (objectArray != null) {
+            for (Object object : objectArray) {
+                if (object instanceof JSONObject) {
+                    objects.add((JSONObject) object);
+                }
+            }
+        }
+        return objects;
+    }
+
+    public String getPreviousPipeline() {
+        return previousPipeline;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public int getCount(ChangeType type) {
+        int count = 0;
+        for (Change change : changes) {
+            if (change.type == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getAddedCount() {
+        return getCount(ChangeType.ADDED);
+    }
+
+    public int getRemovedCount() {
+        return getCount(ChangeType.REMOVED);
+    }
+
+    public int getModifiedCount() {
+        return getCount(ChangeType.MODIFIED);
+    }
+
+    public String toJSONString() {
+        JSONArray changeArray = new JSONArray();
+        for (Change change : changes) {
+            JSONObject json = new JSONObject();
+            json.put("type", change.type.name());
+            json.put("id", change.objectId);
+            if (change.type == ChangeType.MODIFIED) {
+                json.put("addedFields", toJSONArray(change.addedFields));
+                json.put("removedFields", toJSONArray(change.removedFields));
+                json.put("modifiedFields", toJSONArray(change.modifiedFields));
+            }
+            changeArray.add(json);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("previous", previousPipeline);
+        json.put("changes", changeArray);
+        return json.toJSONString();
+    }
+
+    /**
+     * Read a diff written by {@link #toJSONString()}.
+     *
+     * @throws ParseException if the JSON is invalid or not a diff
+     */
+    public static PipelineDiff fromJSON(String json) throws ParseException {
+        Object parsed = new JSONParser().parse(json);
+        if (!(parsed instanceof JSONObject) || !(((JSONObject) parsed).get("changes") instanceof JSONArray)) {
+            throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+        }
+        JSONObject object = (JSONObject) parsed;
+
+        ArrayList<Change> changes = new ArrayList<Change>();
+        for (Object item : (JSONArray) object.get("changes")) {
+            JSONObject entry = (JSONObject) item;
+            Change change;
+            try {
+                change = new Change(ChangeType.valueOf(String.valueOf(entry.get("type"))), (String) entry.get("id"));
+            } catch (IllegalArgumentException e) {
+                throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+            }
+            addAll(change.addedFields, entry.get("addedFields"));
+            addAll(change.removedFields, entry.get("removedFields"));
+            addAll(change.modifiedFields, entry.get("modifiedFields"));
+            changes.add(change);
+        }
+
+        return new PipelineDiff((String) object.get("previous"), changes);
+    }
+
+    private static JSONArray toJSONArray(TreeSet<String> fields) {
+        JSONArray array = new JSONArray();
+        array.addAll(fields);
+        return array;
+    }
+
+    private static void addAll(TreeSet<String> fields, Object array) {
+        if (array instanceof JSONArray) {
+            for (Object field : (JSONArray) array) {
+                fields.add(String.valueOf(field));
+            }
+        }
+    }
+
+    public static class Change {
+        private ChangeType type;
+        private String objectId;
+        // Sorted, so that the field order of the JSON does not matter
+        private TreeSet<String> addedFields = new TreeSet<String>();
+        private TreeSet<String> removedFields = new TreeSet<String>();
+        private TreeSet<String> modifiedFields = new TreeSet<String>();
+
+        private Change(ChangeType type, String objectId) {
+            this.type = type;
+            this.objectId = objectId;
+        }
+
+        public ChangeType getType() {
+            return type;
+        }
+
+        public String getObjectId() {
+            return objectId;
+        }
+
+        public List<String> getAddedFields() {
+            return new ArrayList<String>(addedFields);
+        }
+
+        public List<String> getRemovedFields() {
+            return new ArrayList<String>(removedFields);
+        }
+
+        public List<String> getModifiedFields() {
+            return new ArrayList<String>(modifiedFields);
+        }
+
+        private boolean hasFieldChanges() {
+            return !addedFields.isEmpty() || !removedFields.isEmpty() || !modifiedFields.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact activity graph of the pipeline.
+ * <p/>
+ * Built straight from the parsed JSON in one pass over the objects, without
+ * converting to the AWS model. Vertices are numbered in definition order and
+ * edges are stored in parallel arrays. Labels are built once per vertex.
+ */
+class PipelineGraph {
+    private static final String DEFAULT_OBJECT_ID = "Default";
+
+    private final String[] vertexIds;
+    private final String[] vertexLabels;
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final String[] edgeLabels;
+
+    private PipelineGraph(String[] vertexIds, String[] vertexLabels, int[] edgeSources, int[] edgeTargets,
+                          String[] edgeLabels) {
+        this.vertexIds = vertexIds;
+        this.vertexLabels = vertexLabels;
+        this.edgeSources = edgeSources;
+        this.edgeTargets = edgeTargets;
+        this.edgeLabels = edgeLabels;
+    }
+
+    /**
+     * Build the graph of activities and the references between them.
+     * Other objects are left out, as full graphs tend to be very noisy.
+     * <p/>
+     * Fields are visited in the same order, and repeated references
+     * collapsed the same way, as in {@link PipelineObject#getAWSObjects()}.
+     *
+     * @param objects The "objects" array of the pipeline, may be null
+     */
+    static PipelineGraph activities(JSONArray objects) {
+        ArrayList<String> ids = new ArrayList<String>();
+        ArrayList<String> labels = new ArrayList<String>();
+        ArrayList<Reference> references = new ArrayList<Reference>();
+        HashMap<String, Integer> idToVertex = new HashMap<String, Integer>();
+        // References in arrays of the current object, to collapse repeated ones
+        HashSet<Reference> arrayReferences = new HashSet<Reference>();
+        StringBuilder types = new StringBuilder();
+
+        if (objects != null) {
+            for (Object item : objects) {
+                if (!(item instanceof JSONObject)) {
+                    continue;
+                }
+                JSONObject object = (JSONObject) item;
+                Object id = object.get("id");
+                if (DEFAULT_OBJECT_ID.equals(id)) {
+                    continue;
+                }
+
+                int vertex = labels.size();
+                int firstReference = references.size();
+                types.setLength(0);
+                arrayReferences.clear();
+                boolean activity = false;
+                for (Object entry : object.entrySet()) {
+                    String key = (String) ((Map.Entry) entry).getKey();
+                    if (!key.equals("id") && !key.equals("name")) {
+                        activity |= visit(key, ((Map.Entry) entry).getValue(), vertex, false,
+                                types, references, arrayReferences);
+                    }
+                }
+
+                if (activity) {
+                    String vertexId = id == null ? null : id.toString();
+                    ids.add(vertexId);
+                    labels.add(clean(getLabel(object, id, types)));
+                    idToVertex.put(vertexId, vertex);
+                } else {
+                    references.subList(firstReference, references.size()).clear();
+                }
+            }
+        }
+
+        // Targets are resolved once every activity is known, as references can point forwards
+        int[] sources = new int[references.size()];
+        int[] targets = new int[references.size()];
+        String[] edgeLabels = new String[references.size()];
+        int edgeCount = 0;
+        for (Reference reference : references) {
+            Integer target = idToVertex.get(reference.target);
+            if (target != null) {
+                sources[edgeCount] = reference.source;
+                targets[edgeCount] = target;
+                edgeLabels[edgeCount] = clean(reference.key);
+                edgeCount++;
+            }
+        }
+
+        return new PipelineGraph(ids.toArray(new String[ids.size()]), labels.toArray(new String[labels.size()]),
+                Arrays.copyOf(sources, edgeCount), Arrays.copyOf(targets, edgeCount), Arrays.copyOf(edgeLabels, edgeCount));
+    }
+
+    /**
+     * Collect type names and references found in a field value.
+     *
+     * @return true if the value is a type naming an activity
+     */
+    private static boolean visit(String key, Object value, int vertex, boolean inArray, StringBuilder types,
+                                 List<Reference> references, Set<Reference> arrayReferences) {
+        if (value instanceof String) {
+            if (key.equals("type")) {
+                types.append("\nType: ").append(value);
+                return ((String) value).contains("Activity");
+            }
+        } else if (value instanceof JSONArray) {
+            boolean activity = false;
+            for (Object item : (JSONArray) value) {
+                activity |= visit(key, item, vertex, true, types, references, arrayReferences);
+            }
+            return activity;
+        } else if (value instanceof JSONObject) {
+            Object ref = ((JSONObject) value).get("ref");
+            // Keys are unique, so only array elements can repeat a reference
+            if (ref instanceof String) {
+                Reference reference = new Reference(vertex, key, (String) ref);
+                if (!inArray || arrayReferences.add(reference)) {
+                    references.add(reference);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String getLabel(JSONObject object, Object id, StringBuilder types) {
+        Object name = object.get("name");
+        if (name instanceof String && !((String) name).isEmpty()) {
+            return new StringBuilder((String) name).append("\nID: ").append(id).append(types).toString();
+        } else {
+            // Rare enough that the AWS model's own formatting can be used
+            return PipelineObject.toAWSObject(object).toString();
+        }
+    }
+
+    int getVertexCount() {
+        return vertexLabels.length;
+    }
+
+    String getVertexId(int vertex) {
+        return vertexIds[vertex];
+    }
+
+    String getVertexLabel(int vertex) {
+        return vertexLabels[vertex];
+    }
+
+    int getEdgeCount() {
+        return edgeSources.length;
+    }
+
+    int getEdgeSource(int edge) {
+        return edgeSources[edge];
+    }
+
+    int getEdgeTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    String getEdgeLabel(int edge) {
+        return edgeLabels[edge];
+    }
+
+    private static String clean(String input) {
+        return input.replace('"', '\'');
+    }
+
+    private static class Reference {
+        private final int source;
+        private final String key;
+        private final String target;
+
+        private Reference(int source, String key, String target) {
+            this.source = source;
+            this.key = key;
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Reference)) {
+                return false;
+            }
+            Reference other = (Reference) o;
+            return source == other.source && key.equals(other.key) && target.equals(other.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * source + key.hashCode()) + target.hashCode();
+        }
+    }
+}
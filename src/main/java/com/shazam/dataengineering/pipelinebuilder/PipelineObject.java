@@ -21,6 +21,8 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -102,6 +104,14 @@ public class PipelineObject {
         return pipeline.toJSONString();
     }
 
+    JSONArray getObjects() {
+        if (!isValid()) {
+            return null;
+        }
+        Object objects = pipeline.get("objects");
+        return objects instanceof JSONArray ? (JSONArray) objects : null;
+    }
+
     /**
      * Parse the JSON file into AWS Pipeline model.
      * Warning: Lots of ugly casts here.
@@ -115,34 +125,49 @@ public class PipelineObject {
         if (isValid()) {
             JSONArray objectArray = (JSONArray) pipeline.get("objects");
             for (Object object : objectArray) {
-                com.amazonaws.services.datapipeline.model.PipelineObject pipelineObject
-                        = new com.amazonaws.services.datapipeline.model.PipelineObject();
-                LinkedHashSet<Field> fields = new LinkedHashSet<Field>();
-                JSONObject jsonObject = (JSONObject) object;
-
-                for (String key : (Set<String>) jsonObject.keySet()) {
-                    if (key.equals("id")) {
-                        pipelineObject.setId((String) jsonObject.get(key));
-                    } else if (key.equals("name")) {
-                        pipelineObject.setName((String) jsonObject.get(key));
-                    } else {
-                        parseFields(fields, jsonObject.get(key), key);
-                    }
-                }
-
-                pipelineObject.setFields(fields);
-                list.add(pipelineObject);
+                list.add(toAWSObject((JSONObject) object));
             }
         }
 
         return list;
     }
 
+    static com.amazonaws.services.datapipeline.model.PipelineObject toAWSObject(JSONObject jsonObject) {
+        com.amazonaws.services.datapipeline.model.PipelineObject pipelineObject
+                = new com.amazonaws.services.datapipeline.model.PipelineObject();
+        LinkedHashSet<Field> fields = new LinkedHashSet<Field>();
+
+        for (String key : (Set<String>) jsonObject.keySet()) {
+            if (key.equals("id")) {
+                pipelineObject.setId((String) jsonObject.get(key));
+            } else if (key.equals("name")) {
+                pipelineObject.setName((String) jsonObject.get(key));
+            } else {
+                parseFields(fields, jsonObject.get(key), key);
+            }
+        }
+
+        pipelineObject.setFields(fields);
+        return pipelineObject;
+    }
+
     public void writeDOT(Writer writer) {
         new GraphWriter().writeDOT(writer, this);
     }
 
-    private HashSet<Field> parseFields(LinkedHashSet<Field> accumulator, Object json, String key) {
+    public void writeFullDOT(Writer writer) throws IOException {
+        new FullGraphWriter().writeDOT(writer, this);
+    }
+
+    public void writeSVG(Writer writer) {
+        new GraphWriter().writeSVG(writer, this);
+    }
+
+    public void writePNG(OutputStream output) throws IOException {
+        new GraphWriter().writePNG(output, this);
+    }
+
+    private static HashSet<Field> parseFields(LinkedHashSet<Field> accumulator, Object json, String key) {
         if (json instanceof String) {
             accumulator.add(new Field().withKey(key).withStringValue((String) json));
         } else if (json instanceof JSONArray) {
@@ -17,6 +17,7 @@ package com.shazam.dataengineering.pipelinebuilder;
 
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
@@ -24,8 +25,12 @@ import hudson.model.Run;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -33,6 +38,8 @@ import java.util.regex.Pattern;
 
 public class PipelineProcessor {
     public static final String FILE_NAME_FORMAT = "%s%d-%s-%d.json";
+    public static final String DEVELOPMENT_PREFIX = "d";
+    public static final String PRODUCTION_PREFIX = "p";
 
     private AbstractBuild build;
     private BuildListener listener;
@@ -41,6 +48,11 @@ public class PipelineProcessor {
     private String name;
     private int buildNumber;
     private String s3Url;
+    private boolean renderPng;
+    // Phases of the environment being processed
+    private BuildPhaseTimings timings = new BuildPhaseTimings();
+    // Analysis of the environment being processed, shared by validation and the analysis artifact
+    private PipelineAnalysis analysis;
     private HashMap<S3Environment, String> s3ScriptToUrl = new HashMap<S3Environment, String>();
 
     public PipelineProcessor(AbstractBuild build, Launcher launcher, BuildListener listener) {
@@ -61,6 +73,10 @@ public class PipelineProcessor {
         this.s3Url = s3Url;
     }
 
+    public void setRenderPng(boolean renderPng) {
+        this.renderPng = renderPng;
+    }
+
     public Map<S3Environment, String> getS3Urls() {
         return s3ScriptToUrl;
     }
@@ -68,16 +84,34 @@ public class PipelineProcessor {
     public boolean process(FilePath file) {
         if (checkExists(file)) {
             try {
+                long readStart = System.nanoTime();
                 String text = file.readToString();
+                long readNanos = System.nanoTime() - readStart;
+                // Changes are shown against the version of each pipeline deployed now, rather than the previous build
+                Map<String, Deployment> deployed = DeploymentHistoryAction.getCurrentDeployments(build.getProject());
                 int counter = 1;
 
                 for (Environment env : environments) {
-                    String fileName = getFileName(env, counter);
+                    String fileName = getFileName(env, counter, buildNumber);
+                    timings = new BuildPhaseTimings();
+                    // The definition is read once, and shared by all environments
+                    timings.addNanos(BuildPhaseTimings.READ, readNanos);
+                    PipelineObject pipelineObject = storeProcessedFile(fileName, text, env);
+                    if (pipelineObject == null) {
+                        return false;
+                    }
+
+                    long start = System.nanoTime();
+                    writeAnalysis(fileName, analysis);
+                    Run deployedBuild = getDeployedBuild(deployed.get(DeploymentAction.getLogicalPipelineName(fileName)));
+                    if (deployedBuild != null) {
+                        String deployedFileName = getFileName(env, counter, deployedBuild.getNumber());
+                        writeDiff(fileName, new File(deployedBuild.getArtifactsDir(), deployedFileName), pipelineObject);
+                    }
+                    timings.add(BuildPhaseTimings.ANALYSIS, start);
+                    writeGraphs(fileName, pipelineObject);
+                    writeTimings(fileName);
                     counter += 1;
-                    storeProcessedFile(fileName, text, env);
-                    writeDOT(fileName);
-                    // TODO: attempt to convert to png
-                    // Using CLI: dot -Tpng input.dot > output.png
                 }
                 return true;
             } catch (IOException e) {
@@ -89,20 +123,139 @@ public class PipelineProcessor {
         }
     }
 
-    private void writeDOT(String filename) throws IOException {
-        FilePath pipelinePath = new FilePath(new FilePath(build.getArtifactsDir()), filename);
-        PipelineObject pipelineObject = new PipelineObject(pipelinePath.readToString());
-        FileWriter dotWriter = new FileWriter(new File(build.getArtifactsDir(), filename.replace(".json", ".dot")));
+    /**
+     * Write the dependency analysis of the activities next to the pipeline, for the deploy page.
+     */
+    private void writeAnalysis(String filename, PipelineAnalysis analysis) throws IOException {
+        listener.getLogger().println(String.format("[INFO] %s: %d activities, dependency depth %d, critical path %s",
+                filename, analysis.getActivityCount(), analysis.getMaxDepth(),
+                Util.join(analysis.getCriticalPath(), " -> ")));
 
-        pipelineObject.writeDOT(dotWriter);
+        Writer writer = new OutputStreamWriter(
+                new FileOutputStream(getArtifact(filename, PipelineAnalysis.ARTIFACT_SUFFIX)), StandardCharsets.UTF_8);
+        try {
+            writer.write(analysis.toJSONString());
+        } finally {
+            writer.close();
+        }
     }
 
-    private String getFileName(Environment environment, int counter) {
+    /**
+     * @param deployment Current deployment of the pipeline, or null if it isn't deployed
+     * @return Build the pipeline was deployed from, or null
+     */
+    private Run getDeployedBuild(Deployment deployment) {
+        if (deployment == null || deployment.getBuildNumber() == null) {
+            return null;
+        }
+        return build.getProject().getBuildByNumber(deployment.getBuildNumber());
+    }
+
+    /**
+     * Write the changes since the same pipeline in the deployed build,
+     * so the confirm page does not have to compute them.
+     */
+    private void writeDiff(String filename, File previousFile, PipelineObject pipelineObject) throws IOException {
+        if (!previousFile.exists()) {
+            return;
+        }
+
+        PipelineObject previous = new PipelineObject(new FilePath(previousFile).readToString());
+        PipelineDiff diff = PipelineDiff.compare(previous, pipelineObject, previousFile.getName(), filename);
+        listener.getLogger().println(String.format("[INFO] %s: %d objects added, %d removed, %d modified since deployed %s",
+                filename, diff.getAddedCount(), diff.getRemovedCount(), diff.getModifiedCount(),
+                previousFile.getName()));
+
+        Writer writer = new OutputStreamWriter(
+                new FileOutputStream(getArtifact(filename, PipelineDiff.ARTIFACT_SUFFIX)), StandardCharsets.UTF_8);
+        try {
+            writer.write(diff.toJSONString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write the activity graph as DOT and SVG, and optionally as PNG.
+     * Images are rendered in process, so no Graphviz installation is needed.
+     * The graph of all objects, clustered by type, is written alongside as -full.dot.
+     */
+    private void writeGraphs(String filename, PipelineObject pipelineObject) throws IOException {
+        long start = System.nanoTime();
+        Writer dotWriter = new FileWriter(getArtifact(filename, ".dot"));
+        try {
+            pipelineObject.writeDOT(dotWriter);
+        } finally {
+            dotWriter.close();
+        }
+
+        Writer fullDotWriter = new FileWriter(getArtifact(filename, "-full.dot"));
+        try {
+            pipelineObject.writeFullDOT(fullDotWriter);
+        } finally {
+            fullDotWriter.close();
+        }
+        timings.add(BuildPhaseTimings.DOT_EXPORT, start);
+
+        start = System.nanoTime();
+
+        Writer svgWriter = new OutputStreamWriter(new FileOutputStream(getArtifact(filename, ".svg")), StandardCharsets.UTF_8);
+        try {
+            pipelineObject.writeSVG(svgWriter);
+        } finally {
+            svgWriter.close();
+        }
+
+        if (renderPng) {
+            writePNG(pipelineObject, getArtifact(filename, ".png"));
+        }
+        timings.add(BuildPhaseTimings.RENDER, start);
+    }
+
+    private void writePNG(PipelineObject pipelineObject, File pngFile) throws IOException {
+        OutputStream pngOutput = new FileOutputStream(pngFile);
+        boolean rendered = false;
+        try {
+            pipelineObject.writePNG(pngOutput);
+            rendered = true;
+        } catch (RuntimeException e) {
+            listener.getLogger().println("[WARN] Unable to render pipeline graph as PNG: " + e);
+        } catch (LinkageError e) {
+            // AWT native libraries are missing
+            listener.getLogger().println("[WARN] Unable to render pipeline graph as PNG: " + e);
+        } catch (InternalError e) {
+            // No fonts available to AWT
+            listener.getLogger().println("[WARN] Unable to render pipeline graph as PNG: " + e);
+        } finally {
+            pngOutput.close();
+            if (!rendered) {
+                pngFile.delete();
+            }
+        }
+    }
+
+    private void writeTimings(String filename) throws IOException {
+        listener.getLogger().println(String.format("[INFO] %s: build phases %s", filename, timings));
+
+        Writer writer = new OutputStreamWriter(
+                new FileOutputStream(getArtifact(filename, BuildPhaseTimings.ARTIFACT_SUFFIX)), StandardCharsets.UTF_8);
+        try {
+            writer.write(timings.toJSONString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private File getArtifact(String pipelineFilename, String extension) {
+        return new File(build.getArtifactsDir(), pipelineFilename.replace(".json", extension));
+    }
+
+    private String getFileName(Environment environment, int counter, int buildNumber) {
         String prefix;
         if (environment instanceof DevelopmentEnvironment) {
-            prefix = "d";
+            prefix = DEVELOPMENT_PREFIX;
         } else if (environment instanceof ProductionEnvironment) {
-            prefix = "p";
+            prefix = PRODUCTION_PREFIX;
         } else {
             prefix = "u";
         }
@@ -110,34 +263,64 @@ public class PipelineProcessor {
         return String.format(FILE_NAME_FORMAT, prefix, counter, name, buildNumber);
     }
 
-    private boolean storeProcessedFile(String fileName, String json, Environment environment) {
+    /**
+     * @return The processed pipeline, or null if it is invalid or could not be stored
+     */
+    private PipelineObject storeProcessedFile(String fileName, String json, Environment environment) {
+        long start = System.nanoTime();
         String singleLineJson = performInlining(json);
+        timings.add(BuildPhaseTimings.INLINE, start);
+
+        start = System.nanoTime();
+        long scriptNanos = getScriptResolutionNanos();
         String newJson = performSubstitutions(singleLineJson, fileName, environment);
+        // Script resolution is timed separately
+        timings.add(BuildPhaseTimings.SUBSTITUTE, start);
+        timings.addNanos(BuildPhaseTimings.SUBSTITUTE, scriptNanos - getScriptResolutionNanos());
+
+        start = System.nanoTime();
         List<String> warnings = warnForUnreplacedKeys(newJson);
         for (String warning : warnings) {
             listener.getLogger().println("[WARN] " + warning);
         }
 
         // Validate created pipeline
-        PipelineObject pipelineObject = new PipelineObject(json);
+        PipelineObject pipelineObject = new PipelineObject(newJson);
         if (!pipelineObject.isValid()) {
             listener.error("Resulting JSON file is invalid pipeline object");
-            return false;
+            return null;
+        }
+
+        analysis = PipelineAnalysis.analyze(pipelineObject);
+        List<String> errors = new PipelineValidator().validate(pipelineObject, analysis);
+        timings.add(BuildPhaseTimings.VALIDATE, start);
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                listener.error(error);
+            }
+            listener.error("Pipeline %s failed validation", fileName);
+            return null;
         }
 
+        start = System.nanoTime();
         FilePath newPath = new FilePath(new FilePath(build.getArtifactsDir()), fileName);
         try {
             newPath.copyFrom(new ByteArrayInputStream((newJson.getBytes(StandardCharsets.UTF_8))));
-            return true;
+            timings.add(BuildPhaseTimings.WRITE, start);
+            return pipelineObject;
         } catch (IOException e) {
             listener.getLogger().println(e);
-            return false;
+            return null;
         } catch (InterruptedException e) {
             listener.getLogger().println(e);
-            return false;
+            return null;
         }
     }
 
+    private long getScriptResolutionNanos() {
+        return timings.getNanos(BuildPhaseTimings.WORKSPACE_SCAN) + timings.getNanos(BuildPhaseTimings.UPSTREAM_SEARCH);
+    }
+
     private List<String> warnForUnreplacedKeys(String json) {
         ArrayList<String> warnings = new ArrayList<String>();
         Pattern pattern = Pattern.compile("\\$\\{([^}]+)\\}");
@@ -270,24 +453,32 @@ public class PipelineProcessor {
         }
 
         // First look recursively in current workspace
-        if (scanDirectory(build.getWorkspace(), filename)) {
+        long start = System.nanoTime();
+        boolean found = scanDirectory(build.getWorkspace(), filename);
+        timings.add(BuildPhaseTimings.WORKSPACE_SCAN, start);
+        if (found) {
             return true;
         }
 
         // Second look in upstream projects
-        Set<AbstractProject> upstreamProjects = build.getUpstreamBuilds().keySet();
-        for (AbstractProject project : upstreamProjects) {
-            List<Run.Artifact> artifacts = project.getLastBuild().getArtifacts();
-            for (Run.Artifact artifact : artifacts) {
-                if (artifact.getFileName().equals(filename)) {
-                    newPath.copyFrom(new FilePath(artifact.getFile()));
-                    return true;
+        start = System.nanoTime();
+        try {
+            Set<AbstractProject> upstreamProjects = build.getUpstreamBuilds().keySet();
+            for (AbstractProject project : upstreamProjects) {
+                List<Run.Artifact> artifacts = project.getLastBuild().getArtifacts();
+                for (Run.Artifact artifact : artifacts) {
+                    if (artifact.getFileName().equals(filename)) {
+                        newPath.copyFrom(new FilePath(artifact.getFile()));
+                        return true;
+                    }
                 }
+
             }
 
+            return false;
+        } finally {
+            timings.add(BuildPhaseTimings.UPSTREAM_SEARCH, start);
         }
-
-        return false;
     }
 
     private boolean scanDirectory(FilePath directory, String filename) throws IOException, InterruptedException {
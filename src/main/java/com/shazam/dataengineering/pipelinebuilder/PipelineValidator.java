@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.Util;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Offline structural validation of the pipeline definition.
+ * Catches mistakes that would otherwise only be reported by
+ * validatePipelineDefinition, after a pipeline has already been created in AWS.
+ * <p/>
+ * Checks for missing or duplicate ids, missing types, references to
+ * undefined objects, malformed schedule start dates and dependsOn cycles.
+ */
+public class PipelineValidator {
+    private static final String DEFAULT_OBJECT_ID = "Default";
+
+    /**
+     * Validate the pipeline structure.
+     *
+     * @param pipeline Pipeline to validate
+     * @return List of error messages, empty if the pipeline is valid
+     */
+    public List<String> validate(PipelineObject pipeline) {
+        return validate(pipeline, null);
+    }
+
+    /**
+     * Validate the pipeline structure, reusing an analysis of it for the cycle check.
+     *
+     * @param pipeline Pipeline to validate
+     * @param analysis Analysis of the pipeline, or null to analyze it here
+     * @return List of error messages, empty if the pipeline is valid
+     */
+    public List<String> validate(PipelineObject pipeline, PipelineAnalysis analysis) {
+        ArrayList<String> errors = new ArrayList<String>();
+        if (!pipeline.isValid()) {
+            errors.add("Pipeline definition is not valid JSON");
+            return errors;
+        }
+
+        JSONArray objectArray = pipeline.getObjects();
+        if (objectArray == null) {
+            errors.add("Pipeline definition has no \"objects\" array");
+            return errors;
+        }
+
+        // First pass collects ids, so that forward references resolve
+        HashSet<String> ids = new HashSet<String>();
+        for (int i = 0; i < objectArray.size(); i++) {
+            Object object = objectArray.get(i);
+            if (!(object instanceof JSONObject)) {
+                errors.add(String.format("Object at position %d is not a JSON object", i));
+                continue;
+            }
+
+            Object id = ((JSONObject) object).get("id");
+            if (!(id instanceof String) || ((String) id).isEmpty()) {
+                errors.add(String.format("Object at position %d has no id", i));
+            } else if (!ids.add((String) id)) {
+                errors.add(String.format("Duplicate object id: %s", id));
+            }
+        }
+
+        for (Object object : objectArray) {
+            if (object instanceof JSONObject) {
+                validateObject((JSONObject) object, ids, errors);
+            }
+        }
+
+        if (analysis == null) {
+            analysis = PipelineAnalysis.analyze(pipeline);
+        }
+        for (List<String> cycle : analysis.getCycles()) {
+            errors.add(String.format("Activities form a dependsOn cycle: %s", Util.join(cycle, " -> ")));
+        }
+
+        return errors;
+    }
+
+    private void validateObject(JSONObject object, Set<String> ids, List<String> errors) {
+        Object id = object.get("id");
+        Object type = object.get("type");
+
+        if (!DEFAULT_OBJECT_ID.equals(id) && (!(type instanceof String) || ((String) type).isEmpty())) {
+            errors.add(String.format("Object %s has no type", id));
+        }
+
+        if ("Schedule".equals(type)) {
+            Object startDate = object.get("startDateTime");
+            if (startDate != null && !PipelineObject.validateDate(startDate.toString())) {
+                errors.add(String.format("Schedule %s has invalid startDateTime %s, expected format %s",
+                        id, startDate, PipelineObject.PIPELINE_DATE_FORMAT));
+            }
+        }
+
+        for (Object key : object.keySet()) {
+            validateReferences(id, key.toString(), object.get(key), ids, errors);
+        }
+    }
+
+    private void validateReferences(Object id, String key, Object value, Set<String> ids, List<String> errors) {
+        if (value instanceof JSONArray) {
+            for (Object item : (JSONArray) value) {
+                validateReferences(id, key, item, ids, errors);
+            }
+        } else if (value instanceof JSONObject) {
+            Object ref = ((JSONObject) value).get("ref");
+            if (ref == null) {
+                errors.add(String.format("Field %s of object %s is missing a ref", key, id));
+            } else if (!ids.contains(ref.toString())) {
+                errors.add(String.format("Field %s of object %s references undefined object %s", key, id, ref));
+            }
+        }
+    }
+}
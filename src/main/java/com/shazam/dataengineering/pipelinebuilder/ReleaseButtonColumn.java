@@ -27,7 +27,27 @@ public class ReleaseButtonColumn extends ListViewColumn {
     }
 
     public boolean isDeployConfigured(Job job) {
-        return job.getLastBuild() != null && job.getLastBuild().getAction(DeploymentAction.class) != null;
+        return DeployableBuildCache.getDeployableBuildNumber(job) != DeployableBuildCache.NOT_DEPLOYABLE;
+    }
+
+    public int getDeployableBuildNumber(Job job) {
+        return DeployableBuildCache.getDeployableBuildNumber(job);
+    }
+
+    public String getLastDeploymentSummary(Job job) {
+        Deployment deployment = DeployableBuildCache.getLastDeployment(job);
+        if (deployment == null) {
+            return "Not deployed yet";
+        } else {
+            // Entries recorded before the build number was kept don't have one
+            Integer buildNumber = deployment.getBuildNumber();
+            return String.format("Last %s deployment: %s (%s) on %s by %s",
+                    deployment.isSuccess() ? "successful" : "failed",
+                    buildNumber == null ? "unknown build" : "build #" + buildNumber,
+                    deployment.getPipelineId(),
+                    deployment.getISODate(),
+                    deployment.getUsername());
+        }
     }
 
     @Extension
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.model.Computer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Checks in the background whether pipelines have running tasks, and caches the results.
+ * <p/>
+ * Finding running tasks pages through every attempt of a pipeline, which takes
+ * a long time for pipelines with a long history. The check is started when a
+ * deployment is confirmed, and the confirm page picks up the result once known.
+ * A check is not repeated while one for the same pipeline is pending or fresh.
+ */
+public class RunningTaskCheck {
+    public enum Status {
+        PENDING, RUNNING, NOT_RUNNING, UNKNOWN
+    }
+
+    public static final long MAX_AGE = 60 * 1000L;
+
+    private static final RunningTaskCheck INSTANCE = new RunningTaskCheck(Computer.threadPoolForRemoting);
+
+    private final Executor executor;
+    private final Map<String, Entry> checks = new HashMap<String, Entry>();
+
+    RunningTaskCheck(Executor executor) {
+        this.executor = executor;
+    }
+
+    public static RunningTaskCheck getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start checking the pipeline, unless a check is pending or finished less than {@link #MAX_AGE} ago.
+     */
+    public void start(final String pipelineId, final AWSProxy proxy) {
+        final Entry entry;
+        synchronized (checks) {
+            long now = System.currentTimeMillis();
+            Iterator<Entry> iterator = checks.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isExpired(now)) {
+                    iterator.remove();
+                }
+            }
+            if (checks.containsKey(pipelineId)) {
+                return;
+            }
+            entry = new Entry();
+            checks.put(pipelineId, entry);
+        }
+
+        executor.execute(new Runnable() {
+            public void run() {
+                Status status;
+                try {
+                    status = proxy.hasRunningTasks(pipelineId) ? Status.RUNNING : Status.NOT_RUNNING;
+                } catch (RuntimeException e) {
+                    status = Status.UNKNOWN;
+                }
+                entry.finish(status);
+            }
+        });
+    }
+
+    /**
+     * @return Result of the last check, {@link Status#UNKNOWN} if the pipeline hasn't been checked
+     */
+    public Status getStatus(String pipelineId) {
+        synchronized (checks) {
+            Entry entry = checks.get(pipelineId);
+            return entry == null ? Status.UNKNOWN : entry.status;
+        }
+    }
+
+    private static class Entry {
+        private volatile Status status = Status.PENDING;
+        private volatile long finished;
+
+        private void finish(Status status) {
+            this.finished = System.currentTimeMillis();
+            this.status = status;
+        }
+
+        private boolean isExpired(long now) {
+            return status != Status.PENDING && now - finished >= MAX_AGE;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time spent in one deployment stage, aggregated over several deployments.
+ */
+public class StageStatistics {
+    private final String stage;
+    private int count;
+    private long totalMillis;
+    private long maxMillis;
+
+    private StageStatistics(String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * @return Statistics per stage, in the order the stages ran. Deployments without timings are ignored.
+     */
+    public static List<StageStatistics> aggregate(List<Deployment> deployments) {
+        LinkedHashMap<String, StageStatistics> statistics = new LinkedHashMap<String, StageStatistics>();
+        for (Deployment deployment : deployments) {
+            for (Map.Entry<String, Long> timing : deployment.getTimings().entrySet()) {
+                StageStatistics stage = statistics.get(timing.getKey());
+                if (stage == null) {
+                    stage = new StageStatistics(timing.getKey());
+                    statistics.put(timing.getKey(), stage);
+                }
+                stage.add(timing.getValue());
+            }
+        }
+        return new ArrayList<StageStatistics>(statistics.values());
+    }
+
+    private void add(long millis) {
+        count++;
+        totalMillis += millis;
+        maxMillis = Math.max(maxMillis, millis);
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * @return Number of deployments that reached the stage
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public long getAverageMillis() {
+        return count == 0 ? 0 : totalMillis / count;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+}
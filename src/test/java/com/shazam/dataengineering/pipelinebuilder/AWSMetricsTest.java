@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.AmazonServiceException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AWSMetricsTest {
+    @Before
+    public void setUp() {
+        AWSMetrics.reset();
+    }
+
+    @Test
+    public void callsShouldBeCountedByOperationAndOutcome() throws Exception {
+        AWSMetrics.timed(AWSMetrics.LIST_PIPELINES, succeeding());
+        AWSMetrics.timed(AWSMetrics.LIST_PIPELINES, succeeding());
+        callFailing(AWSMetrics.LIST_PIPELINES, new RuntimeException("Connection reset"));
+
+        AmazonServiceException throttled = new AmazonServiceException("Rate exceeded");
+        throttled.setErrorCode("ThrottlingException");
+        callFailing(AWSMetrics.QUERY_OBJECTS, throttled);
+
+        assertEquals(2, AWSMetrics.getCount(AWSMetrics.LIST_PIPELINES, AWSMetrics.Outcome.SUCCESS));
+        assertEquals(1, AWSMetrics.getCount(AWSMetrics.LIST_PIPELINES, AWSMetrics.Outcome.ERROR));
+        assertEquals(0, AWSMetrics.getCount(AWSMetrics.LIST_PIPELINES, AWSMetrics.Outcome.THROTTLED));
+        assertEquals(1, AWSMetrics.getCount(AWSMetrics.QUERY_OBJECTS, AWSMetrics.Outcome.THROTTLED));
+    }
+
+    @Test
+    public void latenciesShouldBeBucketed() throws Exception {
+        AWSMetrics.record(AWSMetrics.CREATE_PIPELINE, AWSMetrics.Outcome.SUCCESS, 5);
+        AWSMetrics.record(AWSMetrics.CREATE_PIPELINE, AWSMetrics.Outcome.SUCCESS, 100);
+        AWSMetrics.record(AWSMetrics.CREATE_PIPELINE, AWSMetrics.Outcome.SUCCESS, 60000);
+
+        JSONObject operations = (JSONObject) AWSMetrics.toJSON().get("operations");
+        JSONObject success = (JSONObject) ((JSONObject) operations.get(AWSMetrics.CREATE_PIPELINE)).get("success");
+        JSONArray histogram = (JSONArray) success.get("histogram");
+
+        assertEquals(3L, success.get("count"));
+        assertEquals(60000L, success.get("maxMillis"));
+        assertEquals(AWSMetrics.BUCKETS.length + 1, histogram.size());
+        assertEquals(1L, histogram.get(0));
+        // Bucket bounds are inclusive
+        assertEquals(1L, histogram.get(3));
+        assertEquals(1L, histogram.get(AWSMetrics.BUCKETS.length));
+    }
+
+    @Test
+    public void callsOfTheCountingThreadShouldBeCounted() throws Exception {
+        AWSMetrics.timed(AWSMetrics.LIST_PIPELINES, succeeding());
+        AWSMetrics.startCounting();
+        AWSMetrics.timed(AWSMetrics.LIST_PIPELINES, succeeding());
+        callFailing(AWSMetrics.CREATE_PIPELINE, new RuntimeException("Connection reset"));
+        AWSMetrics.timed(AWSMetrics.CREATE_PIPELINE, succeeding());
+
+        Map<String, Long> calls = AWSMetrics.stopCounting();
+        AWSMetrics.timed(AWSMetrics.LIST_PIPELINES, succeeding());
+
+        assertEquals(Long.valueOf(1), calls.get(AWSMetrics.LIST_PIPELINES));
+        assertEquals(Long.valueOf(2), calls.get(AWSMetrics.CREATE_PIPELINE));
+        assertTrue(AWSMetrics.stopCounting().isEmpty());
+    }
+
+    private AWSMetrics.Operation<String> succeeding() {
+        return new AWSMetrics.Operation<String>() {
+            public String call() {
+                return "result";
+            }
+        };
+    }
+
+    private void callFailing(String operation, final RuntimeException exception) {
+        try {
+            AWSMetrics.timed(operation, new AWSMetrics.Operation<String>() {
+                public String call() {
+                    throw exception;
+                }
+            });
+            fail("Expected the exception to be rethrown");
+        } catch (RuntimeException e) {
+            assertSame(exception, e);
+        }
+    }
+}
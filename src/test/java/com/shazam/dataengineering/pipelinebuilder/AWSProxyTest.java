@@ -58,6 +58,25 @@ public class AWSProxyTest {
         assertTrue(result);
     }
 
+    @Test
+    public void failedCallShouldBeRecordedInMetrics() throws Exception {
+        AWSMetrics.reset();
+        DataPipelineClient dataPipelineClient = mock(DataPipelineClient.class);
+        when(dataPipelineClient.createPipeline(any(CreatePipelineRequest.class)))
+                .thenThrow(new AmazonServiceException("FAIL"));
+        AWSProxy proxy = new AWSProxy(dataPipelineClient);
+
+        try {
+            proxy.createPipeline("test");
+            fail("Expected DeploymentException");
+        } catch (DeploymentException e) {
+            // Expected
+        }
+
+        assertEquals(1, AWSMetrics.getCount(AWSMetrics.CREATE_PIPELINE, AWSMetrics.Outcome.ERROR));
+        assertEquals(0, AWSMetrics.getCount(AWSMetrics.CREATE_PIPELINE, AWSMetrics.Outcome.SUCCESS));
+    }
+
     @Test
     public void removePipelineFailureShouldReturnFalse() throws Exception {
         DataPipelineClient dataPipelineClient = mock(DataPipelineClient.class);
@@ -202,6 +221,64 @@ public class AWSProxyTest {
         assertTrue(proxy.hasRunningTasks("test-pipeline"));
     }
 
+    @Test
+    public void describePipelinesShouldBatchRequests() throws Exception {
+        DataPipelineClient dataPipelineClient = mock(DataPipelineClient.class);
+        when(dataPipelineClient.describePipelines(any(DescribePipelinesRequest.class)))
+                .thenReturn(new DescribePipelinesResult().withPipelineDescriptionList(
+                        new PipelineDescription().withPipelineId("df-1")));
+        List<String> pipelineIds = new ArrayList<String>();
+        for (int i = 0; i < 60; i++) {
+            pipelineIds.add("df-" + i);
+        }
+        AWSProxy proxy = new AWSProxy(dataPipelineClient);
+
+        List<PipelineDescription> result = proxy.describePipelines(pipelineIds);
+
+        ArgumentCaptor<DescribePipelinesRequest> argument = ArgumentCaptor.forClass(DescribePipelinesRequest.class);
+        verify(dataPipelineClient, times(3)).describePipelines(argument.capture());
+        assertEquals(25, argument.getAllValues().get(0).getPipelineIds().size());
+        assertEquals(25, argument.getAllValues().get(1).getPipelineIds().size());
+        assertEquals(10, argument.getAllValues().get(2).getPipelineIds().size());
+        assertEquals(3, result.size());
+    }
+
+    @Test
+    public void describePipelinesShouldSkipDeletedPipelines() throws Exception {
+        DataPipelineClient dataPipelineClient = mock(DataPipelineClient.class);
+        when(dataPipelineClient.describePipelines(new DescribePipelinesRequest().withPipelineIds("df-1", "df-2")))
+                .thenThrow(new PipelineDeletedException("Pipeline df-2 was deleted"));
+        when(dataPipelineClient.describePipelines(new DescribePipelinesRequest().withPipelineIds("df-1")))
+                .thenReturn(new DescribePipelinesResult().withPipelineDescriptionList(
+                        new PipelineDescription().withPipelineId("df-1")));
+        when(dataPipelineClient.describePipelines(new DescribePipelinesRequest().withPipelineIds("df-2")))
+                .thenThrow(new PipelineDeletedException("Pipeline df-2 was deleted"));
+        AWSProxy proxy = new AWSProxy(dataPipelineClient);
+
+        List<String> pipelineIds = new ArrayList<String>();
+        pipelineIds.add("df-1");
+        pipelineIds.add("df-2");
+        List<PipelineDescription> result = proxy.describePipelines(pipelineIds);
+
+        assertEquals(1, result.size());
+        assertEquals("df-1", result.get(0).getPipelineId());
+    }
+
+
+    @Test
+    public void hasRunningTasksShouldDescribeAPageOfAttemptsInBatches() throws Exception {
+        FakeDataPipeline dataPipeline = new FakeDataPipeline();
+        AWSProxy proxy = new AWSProxy(dataPipeline);
+        String pipelineId = proxy.createPipeline("d1-job-1");
+        dataPipeline.addAttempts(pipelineId, "FINISHED", FakeDataPipeline.DEFAULT_PAGE_SIZE - 1);
+        dataPipeline.addAttempts(pipelineId, "RUNNING", 1);
+
+        assertTrue(proxy.hasRunningTasks(pipelineId));
+        assertEquals(1, dataPipeline.getConditions().getCallCount(AWSMetrics.QUERY_OBJECTS));
+        assertEquals(FakeDataPipeline.DEFAULT_PAGE_SIZE / FakeDataPipeline.MAX_DESCRIBE_IDS,
+                dataPipeline.getConditions().getCallCount(AWSMetrics.DESCRIBE_OBJECTS));
+    }
+
 
     private String executeGetPipelineIdMethod(String regex)
             throws NoSuchMethodException, InvocationTargetException, IllegalAccessException, DeploymentException {
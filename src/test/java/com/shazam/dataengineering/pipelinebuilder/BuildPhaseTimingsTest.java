@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class BuildPhaseTimingsTest {
+    @Test
+    public void phasesShouldAccumulateInOrder() throws Exception {
+        BuildPhaseTimings timings = new BuildPhaseTimings();
+        timings.addNanos(BuildPhaseTimings.READ, 2000000L);
+        timings.addNanos(BuildPhaseTimings.WORKSPACE_SCAN, 5000000L);
+        timings.addNanos(BuildPhaseTimings.SUBSTITUTE, 1000000L);
+        timings.addNanos(BuildPhaseTimings.WORKSPACE_SCAN, 3000000L);
+
+        assertEquals(8000000L, timings.getNanos(BuildPhaseTimings.WORKSPACE_SCAN));
+        assertEquals(0L, timings.getNanos(BuildPhaseTimings.RENDER));
+        assertEquals(11L, timings.getTotalMillis());
+        assertEquals("read 2 ms, scriptWorkspaceScan 8 ms, substitute 1 ms, total 11 ms", timings.toString());
+    }
+
+    @Test
+    public void jsonShouldListPhasesAndTotal() throws Exception {
+        BuildPhaseTimings timings = new BuildPhaseTimings();
+        timings.addNanos(BuildPhaseTimings.INLINE, 4000000L);
+        timings.addNanos(BuildPhaseTimings.VALIDATE, 6000000L);
+
+        JSONObject json = (JSONObject) new JSONParser().parse(timings.toJSONString());
+        ArrayList<String> phases = new ArrayList<String>();
+        for (Object phase : (JSONArray) json.get("phases")) {
+            phases.add((String) ((JSONObject) phase).get("phase"));
+        }
+
+        assertEquals(BuildPhaseTimings.INLINE, phases.get(0));
+        assertEquals(BuildPhaseTimings.VALIDATE, phases.get(1));
+        assertEquals(10L, json.get("totalMillis"));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.model.Job;
+import hudson.model.Run;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DeployableBuildCacheTest {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private DeployableBuildCache.Listener listener = new DeployableBuildCache.Listener();
+
+    @Before
+    public void setUp() {
+        DeployableBuildCache.clear();
+    }
+
+    @Test
+    public void completedBuildShouldBeCachedWithoutLoadingBuilds() throws Exception {
+        Job job = mock(Job.class);
+        Run build = mockBuild(job, 7, true);
+        when(job.getLastBuild()).thenReturn(build);
+
+        listener.onStarted(build, null);
+        assertEquals(DeployableBuildCache.NOT_DEPLOYABLE, DeployableBuildCache.getDeployableBuildNumber(job));
+
+        listener.onCompleted(build, null);
+        reset(job);
+        assertEquals(7, DeployableBuildCache.getDeployableBuildNumber(job));
+        verifyZeroInteractions(job);
+    }
+
+    @Test
+    public void unknownJobShouldBeLookedUpOnce() throws Exception {
+        Job job = mock(Job.class);
+        Run build = mockBuild(job, 3, false);
+        when(job.getLastBuild()).thenReturn(build);
+
+        assertEquals(DeployableBuildCache.NOT_DEPLOYABLE, DeployableBuildCache.getDeployableBuildNumber(job));
+        assertEquals(DeployableBuildCache.NOT_DEPLOYABLE, DeployableBuildCache.getDeployableBuildNumber(job));
+        verify(job, times(1)).getLastBuild();
+    }
+
+    @Test
+    public void olderBuildCompletingLateShouldBeIgnored() throws Exception {
+        Job job = mock(Job.class);
+        Run older = mockBuild(job, 1, true);
+        Run newer = mockBuild(job, 2, false);
+        when(job.getLastBuild()).thenReturn(newer);
+
+        listener.onStarted(newer, null);
+        listener.onCompleted(older, null);
+
+        assertEquals(DeployableBuildCache.NOT_DEPLOYABLE, DeployableBuildCache.getDeployableBuildNumber(job));
+    }
+
+    @Test
+    public void deletingLastBuildShouldFallBackToPreviousBuild() throws Exception {
+        Job job = mock(Job.class);
+        Run previous = mockBuild(job, 4, true);
+        Run last = mockBuild(job, 5, false);
+        when(last.getPreviousBuild()).thenReturn(previous);
+        when(job.getLastBuild()).thenReturn(last);
+
+        listener.onCompleted(last, null);
+        listener.onDeleted(last);
+
+        assertEquals(4, DeployableBuildCache.getDeployableBuildNumber(job));
+    }
+
+    @Test
+    public void lastDeploymentShouldBeReadAgainOnlyAfterANewDeployment() throws Exception {
+        File root = testFolder.newFolder("job");
+        Job job = mock(Job.class);
+        when(job.getRootDir()).thenReturn(root);
+        assertNull(DeployableBuildCache.getLastDeployment(job));
+
+        DeploymentHistoryAction.record(job, 1, "d1-job", new Deployment("user", true, "df-1", new Date(), new ArrayList<String>()));
+        assertEquals("df-1", DeployableBuildCache.getLastDeployment(job).getPipelineId());
+        assertTrue(new File(root, "pipeline-deployments.log").delete());
+
+        assertEquals("df-1", DeployableBuildCache.getLastDeployment(job).getPipelineId());
+    }
+
+    private Run mockBuild(Job job, int number, boolean deployable) {
+        Run build = mock(Run.class);
+        when(build.getParent()).thenReturn(job);
+        when(build.getNumber()).thenReturn(number);
+        if (deployable) {
+            when(build.getAction(DeploymentAction.class)).thenReturn(mock(DeploymentAction.class));
+        }
+        return build;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.services.datapipeline.model.Field;
+import com.amazonaws.services.datapipeline.model.PipelineDescription;
+import hudson.model.Job;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DeployedPipelinesActionTest {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    private DeployedPipelinesAction action = new DeployedPipelinesAction();
+
+    @Before
+    public void setUp() {
+        DeployedPipelinesAction.clear();
+    }
+
+    @Test
+    public void updateShouldDescribeAllPipelinesInOneCall() throws Exception {
+        LinkedHashMap<String, DeployedPipeline> deployed = new LinkedHashMap<String, DeployedPipeline>();
+        deployed.put("df-1", mockPipeline("df-1", 1000));
+        deployed.put("df-2", mockPipeline("df-2", 2000));
+        AWSProxy proxy = mock(AWSProxy.class);
+        when(proxy.describePipelines(Arrays.asList("df-1", "df-2"))).thenReturn(Arrays.asList(
+                describe("df-1", "FINISHED"), describe("df-2", "SCHEDULED")));
+
+        DeployedPipelinesAction.update(proxy, deployed);
+
+        verify(proxy, times(1)).describePipelines(anyListOf(String.class));
+        List<DeployedPipeline> pipelines = DeployedPipelinesAction.getAllPipelines();
+        assertEquals(2, pipelines.size());
+        // Most recently activated first
+        assertEquals("df-2", pipelines.get(0).getPipelineId());
+        assertEquals("SCHEDULED", pipelines.get(0).getState());
+        assertTrue(pipelines.get(0).isScheduled());
+        assertEquals("FINISHED", pipelines.get(1).getState());
+        assertNotNull(action.getLastUpdated());
+        assertNull(action.getLastError());
+    }
+
+    @Test
+    public void removedPipelinesShouldNotBeDescribedAgain() throws Exception {
+        LinkedHashMap<String, DeployedPipeline> deployed = new LinkedHashMap<String, DeployedPipeline>();
+        deployed.put("df-1", mockPipeline("df-1", 1000));
+        deployed.put("df-2", mockPipeline("df-2", 2000));
+        AWSProxy proxy = mock(AWSProxy.class);
+        when(proxy.describePipelines(anyListOf(String.class))).thenReturn(Arrays.asList(describe("df-1", "FINISHED")));
+
+        DeployedPipelinesAction.update(proxy, deployed);
+        DeployedPipelinesAction.update(proxy, deployed);
+
+        verify(proxy).describePipelines(Arrays.asList("df-1", "df-2"));
+        verify(proxy).describePipelines(Arrays.asList("df-1"));
+        assertEquals(1, DeployedPipelinesAction.getAllPipelines().size());
+    }
+
+    @Test
+    public void failedUpdateShouldKeepPreviousPipelines() throws Exception {
+        LinkedHashMap<String, DeployedPipeline> deployed = new LinkedHashMap<String, DeployedPipeline>();
+        deployed.put("df-1", mockPipeline("df-1", 1000));
+        AWSProxy proxy = mock(AWSProxy.class);
+        when(proxy.describePipelines(anyListOf(String.class)))
+                .thenReturn(Arrays.asList(describe("df-1", "FINISHED")))
+                .thenThrow(new DeploymentException(new RuntimeException("Rate exceeded")));
+
+        DeployedPipelinesAction.update(proxy, deployed);
+        try {
+            DeployedPipelinesAction.update(proxy, deployed);
+            fail("Expected DeploymentException");
+        } catch (DeploymentException e) {
+            // Expected
+        }
+
+        assertEquals(1, DeployedPipelinesAction.getAllPipelines().size());
+        assertEquals("Rate exceeded", action.getLastError());
+    }
+
+    @Test
+    public void currentDeploymentShouldBeTheNewestSuccessfulOneOfEachPipeline() throws Exception {
+        Job job = mockJob();
+        DeploymentHistoryAction.record(job, 1, "d1-job", new Deployment("user", true, "df-1", new Date(1000), new ArrayList<String>()));
+        DeploymentHistoryAction.record(job, 2, "p1-job", new Deployment("user", true, "df-2", new Date(2000), new ArrayList<String>()));
+        DeploymentHistoryAction.record(job, 3, "d1-job", new Deployment("user", true, "df-3", new Date(3000), new ArrayList<String>()));
+        DeploymentHistoryAction.record(job, 4, "p1-job", new Deployment("user", false, "", new Date(4000), new ArrayList<String>()));
+
+        Map<String, Deployment> current = DeploymentHistoryAction.getCurrentDeployments(job);
+
+        assertEquals(Arrays.asList("d1-job", "p1-job"), new ArrayList<String>(current.keySet()));
+        assertEquals("df-3", current.get("d1-job").getPipelineId());
+        assertEquals(Integer.valueOf(2), DeploymentHistoryAction.getCurrentDeployment(job, "p1-job").getBuildNumber());
+        assertNull(DeploymentHistoryAction.getCurrentDeployment(job, "p2-job"));
+    }
+
+    @Test
+    public void deploymentsRecordedWithoutPipelineShouldOnlyBeUsedWhenThereAreNoOthers() throws Exception {
+        Job job = mockJob();
+        Deployment legacy = new Deployment("user", true, "df-1", new Date(1000), new ArrayList<String>());
+        DeploymentLog.append(new File(job.getRootDir(), "pipeline-deployments.log"), legacy.toSummary(1));
+
+        assertEquals("df-1", DeploymentHistoryAction.getCurrentDeployments(job).get(null).getPipelineId());
+        assertNull(DeploymentHistoryAction.getCurrentDeployment(job, "d1-job"));
+
+        DeploymentHistoryAction.record(job, 2, "d1-job", new Deployment("user", true, "df-2", new Date(2000), new ArrayList<String>()));
+
+        assertEquals(Arrays.asList("d1-job"), new ArrayList<String>(DeploymentHistoryAction.getCurrentDeployments(job).keySet()));
+    }
+
+    private Job mockJob() throws Exception {
+        File root = testFolder.newFolder("job");
+        Job job = mock(Job.class);
+        when(job.getRootDir()).thenReturn(root);
+        return job;
+    }
+
+    private DeployedPipeline mockPipeline(String pipelineId, long activated) {
+        Job job = mock(Job.class);
+        when(job.getFullName()).thenReturn("job");
+        when(job.getFullDisplayName()).thenReturn("job");
+        when(job.getUrl()).thenReturn("job/job/");
+        Deployment deployment = new Deployment("user", true, pipelineId, new Date(activated), new ArrayList<String>());
+        return new DeployedPipeline(job, deployment.toSummary(1));
+    }
+
+    private PipelineDescription describe(String pipelineId, String state) {
+        return new PipelineDescription().withPipelineId(pipelineId).withName("pipeline-" + pipelineId)
+                .withFields(new Field().withKey("@pipelineState").withStringValue(state));
+    }
+}
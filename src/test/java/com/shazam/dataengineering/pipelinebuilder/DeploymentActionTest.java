@@ -22,7 +22,6 @@ import hudson.FilePath;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Run;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.junit.Rule;
@@ -30,14 +29,18 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.WithoutJenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.ArgumentCaptor;
 
+import javax.servlet.RequestDispatcher;
 import java.io.File;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -85,17 +88,62 @@ public class DeploymentActionTest {
                 new HashMap<S3Environment, String>(),
                 new AnonymousAWSCredentials());
         DeletePipelineRequest request = new DeletePipelineRequest().withPipelineId("test");
+        DeploymentAction.Attempt attempt = new DeploymentAction.Attempt("p1-test-pipeline-2.json", null, "test");
 
-        Field pipelineIdField = action.getClass().getDeclaredField("pipelineToRemoveId");
-        pipelineIdField.setAccessible(true);
-        pipelineIdField.set(action, "test");
-        Method method = action.getClass().getDeclaredMethod("removeOldPipeline", DataPipelineClient.class);
+        Method method = action.getClass().getDeclaredMethod("removeOldPipeline",
+                DeploymentAction.Attempt.class, DataPipelineClient.class);
         method.setAccessible(true);
 
-        method.invoke(action, dataPipelineClient);
+        method.invoke(action, attempt, dataPipelineClient);
         verify(dataPipelineClient).deletePipeline(request);
-        assertTrue(action.getClientMessages().get(0).contains("[INFO]"));
-        assertFalse(action.getClientMessages().get(0).contains("[WARN]"));
+        assertTrue(attempt.getMessages().get(0).contains("[INFO]"));
+        assertFalse(attempt.getMessages().get(0).contains("[WARN]"));
+    }
+
+    @Test
+    @WithoutJenkins
+    public void findOldPipelineShouldPickUpPipelineReplacedSinceConfirmation() throws Exception {
+        FakeDataPipeline dataPipeline = new FakeDataPipeline();
+        String replacementId = dataPipeline.createPipeline(new CreatePipelineRequest()
+                .withName("p1-test-pipeline-3").withUniqueId("p1-test-pipeline-3")).getPipelineId();
+        dataPipeline.addAttempts(replacementId, "RUNNING", 1);
+        DeploymentAction action = new DeploymentAction(
+                getMockAbstractBuild(),
+                new HashMap<S3Environment, String>(),
+                new AnonymousAWSCredentials());
+
+        DeploymentAction.Attempt attempt = new DeploymentAction.Attempt("p1-test-pipeline-4.json", null, "df-confirmed");
+        Method method = action.getClass().getDeclaredMethod("findOldPipeline",
+                DeploymentAction.Attempt.class, DataPipelineClient.class);
+        method.setAccessible(true);
+
+        method.invoke(action, attempt, dataPipeline);
+        assertEquals(replacementId, attempt.getPipelineToRemoveId());
+        assertTrue(attempt.getMessages().get(0).contains("df-confirmed"));
+        assertTrue(attempt.getMessages().get(1).contains("currently running"));
+    }
+
+    @Test
+    @WithoutJenkins
+    public void findOldPipelineShouldCheckForRunningTasksWithoutBackgroundResult() throws Exception {
+        FakeDataPipeline dataPipeline = new FakeDataPipeline();
+        String pipelineId = dataPipeline.createPipeline(new CreatePipelineRequest()
+                .withName("p1-test-pipeline-3").withUniqueId("p1-test-pipeline-3")).getPipelineId();
+        dataPipeline.addAttempts(pipelineId, "RUNNING", 1);
+        DeploymentAction action = new DeploymentAction(
+                getMockAbstractBuild(),
+                new HashMap<S3Environment, String>(),
+                new AnonymousAWSCredentials());
+
+        DeploymentAction.Attempt attempt = new DeploymentAction.Attempt("p1-test-pipeline-4.json", null, pipelineId);
+        Method method = action.getClass().getDeclaredMethod("findOldPipeline",
+                DeploymentAction.Attempt.class, DataPipelineClient.class);
+        method.setAccessible(true);
+
+        // No background check was started, so its status is unknown
+        method.invoke(action, attempt, dataPipeline);
+        assertEquals(1, attempt.getMessages().size());
+        assertTrue(attempt.getMessages().get(0).contains("currently running"));
     }
 
     @Test
@@ -109,13 +157,12 @@ public class DeploymentActionTest {
         CreatePipelineResult createPipelineResult = new CreatePipelineResult().withPipelineId("test12345");
         when(dataPipelineClient.createPipeline(any(CreatePipelineRequest.class))).thenReturn(createPipelineResult);
 
-        Field pipelineFileField = action.getClass().getDeclaredField("pipelineFile");
-        pipelineFileField.setAccessible(true);
-        pipelineFileField.set(action, "p1-test-pipeline-name-34.json");
-        Method method = action.getClass().getDeclaredMethod("createNewPipeline", DataPipelineClient.class);
+        DeploymentAction.Attempt attempt = new DeploymentAction.Attempt("p1-test-pipeline-name-34.json", null, "");
+        Method method = action.getClass().getDeclaredMethod("createNewPipeline",
+                DeploymentAction.Attempt.class, DataPipelineClient.class);
         method.setAccessible(true);
 
-        String result = (String) method.invoke(action, dataPipelineClient);
+        String result = (String) method.invoke(action, attempt, dataPipelineClient);
 
         assertEquals("test12345", result);
     }
@@ -145,21 +192,20 @@ public class DeploymentActionTest {
                 new HashMap<S3Environment, String>(),
                 new AnonymousAWSCredentials());
 
-        Field pipelineFileField = action.getClass().getDeclaredField("pipelineObject");
-        pipelineFileField.setAccessible(true);
-        pipelineFileField.set(action, pipeline);
-        Method method = action.getClass().getDeclaredMethod("validateNewPipeline", String.class, DataPipelineClient.class);
+        DeploymentAction.Attempt attempt = new DeploymentAction.Attempt("p1-test-pipeline-2.json", pipeline, "");
+        Method method = action.getClass().getDeclaredMethod("validateNewPipeline",
+                DeploymentAction.Attempt.class, String.class, DataPipelineClient.class);
         method.setAccessible(true);
 
-        method.invoke(action, pipelineId, dataPipelineClient);
+        method.invoke(action, attempt, pipelineId, dataPipelineClient);
 
-        assertEquals(7, action.getClientMessages().size());
-        assertTrue(action.getClientMessages().get(0).contains("[ERROR]"));
-        assertTrue(action.getClientMessages().get(1).contains("[ERROR]"));
-        assertTrue(action.getClientMessages().get(2).contains("[ERROR]"));
-        assertTrue(action.getClientMessages().get(3).contains("[WARN]"));
-        assertTrue(action.getClientMessages().get(4).contains("[WARN]"));
-        assertTrue(action.getClientMessages().get(5).contains("[WARN]"));
+        assertEquals(7, attempt.getMessages().size());
+        assertTrue(attempt.getMessages().get(0).contains("[ERROR]"));
+        assertTrue(attempt.getMessages().get(1).contains("[ERROR]"));
+        assertTrue(attempt.getMessages().get(2).contains("[ERROR]"));
+        assertTrue(attempt.getMessages().get(3).contains("[WARN]"));
+        assertTrue(attempt.getMessages().get(4).contains("[WARN]"));
+        assertTrue(attempt.getMessages().get(5).contains("[WARN]"));
     }
 
     @Test(expected = InvocationTargetException.class) // Caused by a DeploymentException
@@ -189,13 +235,12 @@ public class DeploymentActionTest {
                 new HashMap<S3Environment, String>(),
                 new AnonymousAWSCredentials());
 
-        Field pipelineFileField = action.getClass().getDeclaredField("pipelineObject");
-        pipelineFileField.setAccessible(true);
-        pipelineFileField.set(action, pipeline);
-        Method method = action.getClass().getDeclaredMethod("validateNewPipeline", String.class, DataPipelineClient.class);
+        DeploymentAction.Attempt attempt = new DeploymentAction.Attempt("p1-test-pipeline-2.json", pipeline, "");
+        Method method = action.getClass().getDeclaredMethod("validateNewPipeline",
+                DeploymentAction.Attempt.class, String.class, DataPipelineClient.class);
         method.setAccessible(true);
 
-        method.invoke(action, pipelineId, dataPipelineClient);
+        method.invoke(action, attempt, pipelineId, dataPipelineClient);
     }
 
     @Test
@@ -218,13 +263,12 @@ public class DeploymentActionTest {
                 new HashMap<S3Environment, String>(),
                 new AnonymousAWSCredentials());
 
-        Field pipelineFileField = action.getClass().getDeclaredField("pipelineObject");
-        pipelineFileField.setAccessible(true);
-        pipelineFileField.set(action, pipeline);
-        Method method = action.getClass().getDeclaredMethod("uploadNewPipeline", String.class, DataPipelineClient.class);
+        DeploymentAction.Attempt attempt = new DeploymentAction.Attempt("p1-test-pipeline-2.json", pipeline, "");
+        Method method = action.getClass().getDeclaredMethod("uploadNewPipeline",
+                DeploymentAction.Attempt.class, String.class, DataPipelineClient.class);
         method.setAccessible(true);
 
-        method.invoke(action, pipelineId, dataPipelineClient);
+        method.invoke(action, attempt, pipelineId, dataPipelineClient);
 
         verify(pipeline).getAWSObjects();
         verify(dataPipelineClient).putPipelineDefinition(any(PutPipelineDefinitionRequest.class));
@@ -245,10 +289,12 @@ public class DeploymentActionTest {
                 new HashMap<S3Environment, String>(),
                 new AnonymousAWSCredentials());
 
-        Method method = action.getClass().getDeclaredMethod("activateNewPipeline", String.class, DataPipelineClient.class);
+        Method method = action.getClass().getDeclaredMethod("activateNewPipeline",
+                DeploymentAction.Attempt.class, String.class, DataPipelineClient.class);
         method.setAccessible(true);
 
-        method.invoke(action, pipelineId, dataPipelineClient);
+        method.invoke(action, new DeploymentAction.Attempt("p1-test-pipeline-2.json", null, ""), pipelineId,
+                dataPipelineClient);
 
         verify(dataPipelineClient).activatePipeline(any(ActivatePipelineRequest.class));
     }
@@ -267,13 +313,10 @@ public class DeploymentActionTest {
                 s3Urls,
                 new AnonymousAWSCredentials());
 
-        Field pipelineFileField = action.getClass().getDeclaredField("pipelineFile");
-        pipelineFileField.setAccessible(true);
-        pipelineFileField.set(action, "test.json");
-        Method method = action.getClass().getDeclaredMethod("deployScriptsToS3");
+        Method method = action.getClass().getDeclaredMethod("deployScriptsToS3", DeploymentAction.Attempt.class);
         method.setAccessible(true);
 
-        method.invoke(action);
+        method.invoke(action, new DeploymentAction.Attempt("test.json", null, ""));
     }
 
     @Test
@@ -285,10 +328,12 @@ public class DeploymentActionTest {
 
         Date date = new Date();
 
-        Method method = action.getClass().getDeclaredMethod("writeReport", Date.class, String.class, Boolean.TYPE);
+        Method method = action.getClass().getDeclaredMethod("writeReport", DeploymentAction.Attempt.class,
+                Date.class, String.class, Boolean.TYPE, DeploymentTimings.class);
         method.setAccessible(true);
 
-        method.invoke(action, date, "test-1234", true);
+        method.invoke(action, new DeploymentAction.Attempt("p1-test-2.json", null, ""), date, "test-1234", true,
+                new DeploymentTimings());
 
         File logFile = new File(testFolder.getRoot(), "deployment.log");
         assertTrue(logFile.exists());
@@ -297,9 +342,7 @@ public class DeploymentActionTest {
         assertEquals(1, jsonContent.size());
 
         JSONParser jsonParser = new JSONParser();
-        JSONObject log = (JSONObject) jsonParser.parse(jsonContent.get(0));
-        JSONArray deployments = (JSONArray) log.get("deployments");
-        JSONObject deployment = (JSONObject) deployments.get(0);
+        JSONObject deployment = (JSONObject) jsonParser.parse(jsonContent.get(0));
 
         assertEquals(String.valueOf(date.getTime()), deployment.get("date").toString());
         assertEquals("SYSTEM", deployment.get("username").toString());
@@ -307,6 +350,63 @@ public class DeploymentActionTest {
         assertEquals("test-1234", deployment.get("pipelineId"));
     }
 
+    @Test
+    public void writingReportShouldUpdateJobIndex() throws Exception {
+        AbstractBuild build = getMockAbstractBuild();
+        when(build.getNumber()).thenReturn(12);
+        DeploymentAction action = new DeploymentAction(
+                build,
+                new HashMap<S3Environment, String>(),
+                new AnonymousAWSCredentials());
+        DeploymentAction.Attempt attempt = new DeploymentAction.Attempt("d1-test-12.json", null, "");
+        attempt.getMessages().add("[INFO] Not stored in the index");
+
+        Method method = action.getClass().getDeclaredMethod("writeReport", DeploymentAction.Attempt.class,
+                Date.class, String.class, Boolean.TYPE, DeploymentTimings.class);
+        method.setAccessible(true);
+
+        method.invoke(action, attempt, new Date(), "test-1234", true, new DeploymentTimings());
+        method.invoke(action, attempt, new Date(), "", false, new DeploymentTimings());
+
+        Deployment last = DeploymentHistoryAction.getLastDeployment(build.getProject());
+        assertNotNull(last);
+        assertFalse(last.isSuccess());
+        assertEquals(Integer.valueOf(12), last.getBuildNumber());
+        assertTrue(last.getMessages().isEmpty());
+        assertEquals("d1-test", last.getPipeline());
+
+        List<Deployment> history = new DeploymentHistoryAction(build.getProject()).getDeployments(0);
+        assertEquals(2, history.size());
+        assertEquals("test-1234", history.get(1).getPipelineId());
+    }
+
+    @Test
+    public void deployShouldUseThePipelinePostedWithTheRequest() throws Exception {
+        DeploymentAction action = new DeploymentAction(
+                getMockAbstractBuild(),
+                new HashMap<S3Environment, String>(),
+                new AnonymousAWSCredentials());
+        action.getClientMessages().add("[WARN] Shown on the confirm page");
+        net.sf.json.JSONObject form = new net.sf.json.JSONObject();
+        form.put("pipeline", "p1-test-pipeline-3.json");
+        form.put("scheduleDate", "2015-01-01 00:00:00");
+        form.put("pipelineToRemove", "");
+        StaplerRequest request = mock(StaplerRequest.class);
+        when(request.getSubmittedForm()).thenReturn(form);
+        when(request.getView(any(), anyString())).thenReturn(mock(RequestDispatcher.class));
+
+        action.doDeploy(request, mock(StaplerResponse.class));
+
+        ArgumentCaptor<Deployment> deployment = ArgumentCaptor.forClass(Deployment.class);
+        verify(request).setAttribute(eq("deployment"), deployment.capture());
+        verify(request).getView(action, "error");
+        assertFalse(deployment.getValue().isSuccess());
+        assertEquals(Arrays.asList("[ERROR] Pipeline not found"), deployment.getValue().getMessages());
+        assertEquals(Arrays.asList("[WARN] Shown on the confirm page"), action.getClientMessages());
+        assertEquals("p1-test-pipeline",
+                DeploymentHistoryAction.getLastDeployment(action.getBuild().getProject()).getPipeline());
+    }
+
     private String executeGetPipelineIdMethod(String pipelineFileName)
             throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
         List<PipelineIdName> pipelineList = new ArrayList<PipelineIdName>();
@@ -340,6 +440,7 @@ public class DeploymentActionTest {
 
         when(build.getProject()).thenReturn(project);
         when(project.getName()).thenReturn("test");
+        when(project.getRootDir()).thenReturn(testFolder.getRoot());
         when(build.getArtifacts()).thenReturn(new ArrayList<Run.Artifact>());
         when(build.getArtifactsDir()).thenReturn(testFolder.getRoot());
 
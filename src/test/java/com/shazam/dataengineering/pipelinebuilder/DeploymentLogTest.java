@@ -0,0 +1,305 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.FilePath;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeploymentLogTest {
+    private static final String LEGACY_LOG = "{\"deployments\":["
+            + "{\"username\":\"user1\",\"status\":true,\"pipelineId\":\"df-1\",\"date\":1000,\"messages\":[\"a\"]},"
+            + "{\"username\":\"user2\",\"status\":false,\"pipelineId\":\"\",\"date\":2000,\"messages\":[]}"
+            + "]}";
+
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void legacyLogShouldBeParsed() throws Exception {
+        DeploymentLog log = new DeploymentLog(LEGACY_LOG);
+
+        assertTrue(log.isParsed());
+        assertEquals(2, log.getAll().size());
+        assertEquals("user1", log.get(0).getUsername());
+        assertEquals("a", log.get(0).getMessages().get(0));
+        assertFalse(log.get(1).isSuccess());
+    }
+
+    @Test
+    public void appendShouldAddLineToLegacyLog() throws Exception {
+        File logFile = testFolder.newFile("deployment.log");
+        new FilePath(logFile).write(LEGACY_LOG, "UTF-8");
+
+        DeploymentLog.append(logFile, getDeployment("user3", 3000));
+        DeploymentLog log = new DeploymentLog(new FilePath(logFile).readToString());
+
+        assertTrue(log.isParsed());
+        assertEquals(3, log.getAll().size());
+        assertEquals("user3", log.get(2).getUsername());
+    }
+
+    @Test
+    public void appendShouldCreateLineDelimitedLog() throws Exception {
+        File logFile = new File(testFolder.getRoot(), "deployment.log");
+
+        DeploymentLog.append(logFile, getDeployment("user1", 1000));
+        DeploymentLog.append(logFile, getDeployment("user2", 2000));
+        String content = new FilePath(logFile).readToString();
+        DeploymentLog log = new DeploymentLog(content);
+
+        assertEquals(2, content.split("\n").length);
+        assertEquals(2, log.getAll().size());
+        assertEquals(new Date(2000), log.get(1).getDate());
+    }
+
+    @Test
+    public void serializedLogShouldParseIntoSameEntries() throws Exception {
+        DeploymentLog log = new DeploymentLog();
+        log.add(getDeployment("user1", 1000));
+        log.add(getDeployment("user2", 2000));
+
+        DeploymentLog reparsed = new DeploymentLog(log.serialize());
+
+        assertEquals(2, reparsed.getAll().size());
+        assertEquals("user2", reparsed.get(1).getUsername());
+    }
+
+    @Test
+    public void stageTimingsApiCallsAndPipelineShouldSurviveSummaryAndParsing() throws Exception {
+        LinkedHashMap<String, Long> timings = new LinkedHashMap<String, Long>();
+        timings.put(DeploymentTimings.CREATE_PIPELINE, 120L);
+        timings.put(DeploymentTimings.ACTIVATE_PIPELINE, 30L);
+        LinkedHashMap<String, Long> apiCalls = new LinkedHashMap<String, Long>();
+        apiCalls.put(AWSMetrics.LIST_PIPELINES, 3L);
+        Deployment deployment = new Deployment("user1", true, "df-1", new Date(1000),
+                new ArrayList<String>(), timings, apiCalls);
+        File logFile = new File(testFolder.getRoot(), "deployment.log");
+
+        DeploymentLog.append(logFile, deployment.toSummary(7, "d1-job"));
+        Deployment parsed = DeploymentLog.readLatest(logFile, 0, 1).get(0);
+
+        assertEquals(Arrays.asList(DeploymentTimings.CREATE_PIPELINE, DeploymentTimings.ACTIVATE_PIPELINE),
+                new ArrayList<String>(parsed.getTimings().keySet()));
+        assertEquals(Long.valueOf(120), parsed.getTimings().get(DeploymentTimings.CREATE_PIPELINE));
+        assertEquals(150, parsed.getTotalMillis());
+        assertEquals(Long.valueOf(3), parsed.getApiCalls().get(AWSMetrics.LIST_PIPELINES));
+        assertEquals("d1-job", parsed.getPipeline());
+        assertTrue(new DeploymentLog(LEGACY_LOG).get(0).getTimings().isEmpty());
+        assertTrue(new DeploymentLog(LEGACY_LOG).get(0).getApiCalls().isEmpty());
+    }
+
+    @Test
+    public void stageStatisticsShouldAggregateTimings() throws Exception {
+        LinkedHashMap<String, Long> first = new LinkedHashMap<String, Long>();
+        first.put(DeploymentTimings.CREATE_PIPELINE, 100L);
+        first.put(DeploymentTimings.ACTIVATE_PIPELINE, 10L);
+        LinkedHashMap<String, Long> second = new LinkedHashMap<String, Long>();
+        second.put(DeploymentTimings.CREATE_PIPELINE, 300L);
+        List<Deployment> deployments = Arrays.asList(
+                new Deployment("user1", true, "df-1", new Date(1000), new ArrayList<String>(), first),
+                new Deployment("user1", false, "", new Date(2000), new ArrayList<String>(), second),
+                getDeployment("user2", 3000));
+
+        List<StageStatistics> statistics = StageStatistics.aggregate(deployments);
+
+        assertEquals(2, statistics.size());
+        assertEquals(DeploymentTimings.CREATE_PIPELINE, statistics.get(0).getStage());
+        assertEquals(2, statistics.get(0).getCount());
+        assertEquals(200, statistics.get(0).getAverageMillis());
+        assertEquals(300, statistics.get(0).getMaxMillis());
+        assertEquals(1, statistics.get(1).getCount());
+    }
+
+    @Test
+    public void corruptLineShouldNotHideOtherEntries() throws Exception {
+        DeploymentLog log = new DeploymentLog();
+        log.add(getDeployment("user1", 1000));
+        String content = log.serialize() + "{\"username\":\"us\n";
+
+        DeploymentLog reparsed = new DeploymentLog(content);
+
+        assertFalse(reparsed.isParsed());
+        assertEquals(1, reparsed.getAll().size());
+    }
+
+    @Test
+    public void readLatestShouldReturnNewestEntriesFirst() throws Exception {
+        File logFile = new File(testFolder.getRoot(), "deployment.log");
+        for (int i = 0; i < 500; i++) {
+            DeploymentLog.append(logFile, getDeployment("user" + i, i));
+        }
+
+        List<Deployment> firstPage = DeploymentLog.readLatest(logFile, 0, 10);
+        List<Deployment> secondPage = DeploymentLog.readLatest(logFile, 10, 10);
+        List<Deployment> lastPage = DeploymentLog.readLatest(logFile, 495, 10);
+
+        assertEquals(10, firstPage.size());
+        assertEquals("user499", firstPage.get(0).getUsername());
+        assertEquals("user490", firstPage.get(9).getUsername());
+        assertEquals("user489", secondPage.get(0).getUsername());
+        assertEquals(5, lastPage.size());
+        assertEquals("user0", lastPage.get(4).getUsername());
+        assertEquals("[INFO] message", lastPage.get(4).getMessages().get(0));
+    }
+
+    @Test
+    public void readLatestShouldContinueIntoLegacyLog() throws Exception {
+        File logFile = testFolder.newFile("deployment.log");
+        new FilePath(logFile).write(LEGACY_LOG, "UTF-8");
+        DeploymentLog.append(logFile, getDeployment("user3", 3000));
+
+        List<Deployment> deployments = DeploymentLog.readLatest(logFile, 0, 10);
+
+        assertEquals(3, deployments.size());
+        assertEquals("user3", deployments.get(0).getUsername());
+        assertEquals("user2", deployments.get(1).getUsername());
+        assertEquals("user1", deployments.get(2).getUsername());
+    }
+
+    @Test
+    public void readLatestShouldReadLegacyLogSpanningManyChunks() throws Exception {
+        char[] padding = new char[1000];
+        Arrays.fill(padding, 'x');
+        StringBuilder legacy = new StringBuilder("{\"deployments\":[");
+        for (int i = 0; i < 200; i++) {
+            List<String> messages = Arrays.asList("[INFO] " + i + new String(padding));
+            Deployment deployment = new Deployment("user" + i, true, "df-" + i, new Date(i), messages);
+            legacy.append(i > 0 ? "," : "").append(deployment.toJSON().toJSONString());
+        }
+        File logFile = testFolder.newFile("deployment.log");
+        new FilePath(logFile).write(legacy.append("]}").toString(), "UTF-8");
+        DeploymentLog.append(logFile, getDeployment("user200", 200));
+
+        List<Deployment> deployments = DeploymentLog.readLatest(logFile, 0, 300);
+
+        assertEquals(201, deployments.size());
+        assertEquals("user200", deployments.get(0).getUsername());
+        assertEquals("user199", deployments.get(1).getUsername());
+        assertEquals("user0", deployments.get(200).getUsername());
+        assertEquals("[INFO] 0" + new String(padding), deployments.get(200).getMessages().get(0));
+    }
+
+    @Test
+    public void readLatestShouldReturnEmptyListForMissingLog() throws Exception {
+        File logFile = new File(testFolder.getRoot(), "deployment.log");
+
+        assertTrue(DeploymentLog.readLatest(logFile, 0, 10).isEmpty());
+    }
+
+    @Test
+    public void rolledLogShouldKeepRecentMessagesAndCompactOlderEntries() throws Exception {
+        File logFile = new File(testFolder.getRoot(), "deployment.log");
+        for (int i = 0; i < 100; i++) {
+            DeploymentLog.append(logFile, getDeployment("user" + i, i), 5, 2048);
+        }
+
+        List<Deployment> deployments = DeploymentLog.readLatest(logFile, 0, 1000);
+
+        assertTrue(new File(testFolder.getRoot(), "deployment.log.1").exists());
+        assertTrue(logFile.length() <= 2048);
+        assertEquals(100, deployments.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("user" + (99 - i), deployments.get(i).getUsername());
+        }
+        for (int i = 0; i < 5; i++) {
+            assertFalse(deployments.get(i).getMessages().isEmpty());
+        }
+        assertTrue(deployments.get(99).getMessages().isEmpty());
+    }
+
+    @Test
+    public void rolledLogShouldFitInSegmentWhenRecentEntriesAreLarge() throws Exception {
+        File logFile = new File(testFolder.getRoot(), "deployment.log");
+        char[] padding = new char[600];
+        Arrays.fill(padding, 'x');
+        for (int i = 0; i < 20; i++) {
+            Deployment deployment = new Deployment("user" + i, true, "df-" + i, new Date(i),
+                    new ArrayList<String>(Arrays.asList(new String(padding))));
+            DeploymentLog.append(logFile, deployment, 5, 2048);
+            assertTrue(logFile.length() <= 2048);
+        }
+
+        List<Deployment> deployments = DeploymentLog.readLatest(logFile, 0, 1000);
+
+        assertEquals(20, deployments.size());
+        assertFalse(deployments.get(0).getMessages().isEmpty());
+        assertTrue(deployments.get(19).getMessages().isEmpty());
+    }
+
+    @Test
+    public void oldestSegmentsShouldBeDeletedPastRetention() throws Exception {
+        File logFile = new File(testFolder.getRoot(), "deployment.log");
+        for (int i = 0; i < 100; i++) {
+            DeploymentLog.append(logFile, getDeployment("user" + i, i), 5, 2048, 2);
+        }
+
+        File[] segments = testFolder.getRoot().listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().matches("deployment\\.log\\.\\d+");
+            }
+        });
+
+        assertEquals(2, segments.length);
+        assertFalse(new File(testFolder.getRoot(), "deployment.log.1").exists());
+        assertEquals("user99", DeploymentLog.readLatest(logFile, 0, 1).get(0).getUsername());
+    }
+
+    @Test
+    public void concurrentAppendsShouldNotLoseEntries() throws Exception {
+        final File logFile = new File(testFolder.getRoot(), "deployment.log");
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            DeploymentLog.append(logFile, getDeployment("user" + thread, i), 5, 4096);
+                        }
+                    } catch (Exception e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.isEmpty());
+        assertEquals(400, DeploymentLog.readLatest(logFile, 0, 1000).size());
+    }
+
+    private Deployment getDeployment(String username, long date) {
+        List<String> messages = new ArrayList<String>(Arrays.asList("[INFO] message"));
+        return new Deployment(username, true, "df-" + date, new Date(date), messages);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DeploymentQueueTest {
+    private DeploymentQueue queue = new DeploymentQueue();
+    private BlockingQueue<DeploymentQueue.Item> started = new LinkedBlockingQueue<DeploymentQueue.Item>();
+
+    @Test
+    public void deploymentsOverTheLimitShouldWait() throws Exception {
+        queue.setMaxConcurrent(1);
+        DeploymentQueue.Item first = queue.enter("job", 1, "d1-job-1.json", false);
+
+        enterInBackground("d1-job-2.json", false);
+        awaitWaiting(1);
+        assertNull(started.poll(100, TimeUnit.MILLISECONDS));
+
+        queue.leave(first);
+        assertEquals("d1-job-2.json", started.poll(5, TimeUnit.SECONDS).getPipeline());
+        assertTrue(queue.getWaiting().isEmpty());
+    }
+
+    @Test
+    public void productionDeploymentsShouldStartFirst() throws Exception {
+        queue.setMaxConcurrent(1);
+        DeploymentQueue.Item first = queue.enter("job", 1, "d1-job-1.json", false);
+
+        enterInBackground("d1-job-2.json", false);
+        awaitWaiting(1);
+        enterInBackground("p1-job-2.json", true);
+        awaitWaiting(2);
+        assertEquals("p1-job-2.json", queue.getWaiting().get(0).getPipeline());
+
+        queue.leave(first);
+        DeploymentQueue.Item production = started.poll(5, TimeUnit.SECONDS);
+        assertEquals("p1-job-2.json", production.getPipeline());
+        assertNull(started.poll(100, TimeUnit.MILLISECONDS));
+
+        queue.leave(production);
+        assertEquals("d1-job-2.json", started.poll(5, TimeUnit.SECONDS).getPipeline());
+    }
+
+    @Test
+    public void deploymentNotStartedInTimeShouldBeDropped() throws Exception {
+        queue.setMaxConcurrent(1);
+        DeploymentQueue.Item first = queue.enter("job", 1, "d1-job-1.json", false);
+
+        assertNull(queue.enter("job", 2, "d1-job-2.json", false, 100));
+        assertTrue(queue.getWaiting().isEmpty());
+
+        queue.leave(first);
+        assertNotNull(queue.enter("job", 3, "d1-job-3.json", false, 100));
+    }
+
+    @Test
+    public void raisingTheLimitShouldStartWaitingDeployments() throws Exception {
+        queue.setMaxConcurrent(1);
+        queue.enter("job", 1, "d1-job-1.json", false);
+        enterInBackground("d1-job-2.json", false);
+        awaitWaiting(1);
+
+        queue.setMaxConcurrent(2);
+
+        assertEquals("d1-job-2.json", started.poll(5, TimeUnit.SECONDS).getPipeline());
+    }
+
+    private void enterInBackground(final String pipeline, final boolean production) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    started.add(queue.enter("job", 2, pipeline, production));
+                } catch (InterruptedException e) {
+                    // Test is over
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void awaitWaiting(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        List<DeploymentQueue.Item> waiting = queue.getWaiting();
+        while (waiting.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            waiting = queue.getWaiting();
+        }
+        assertEquals(count, waiting.size());
+    }
+}
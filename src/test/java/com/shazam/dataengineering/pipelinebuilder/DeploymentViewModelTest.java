@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.model.Run;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DeploymentViewModelTest {
+    @Rule
+    public TemporaryFolder testFolder = new TemporaryFolder();
+
+    @Test
+    public void snapshotShouldListPipelinesAndCompanionArtifacts() throws Exception {
+        String pipeline = "{\"objects\":[{\"id\":\"S\",\"type\":\"Schedule\",\"startDateTime\":\"2015-01-02T00:00:00\"},"
+                + "{\"id\":\"A\",\"name\":\"A\",\"type\":\"SqlActivity\"}]}";
+        ArrayList<Run.Artifact> artifacts = new ArrayList<Run.Artifact>();
+        artifacts.add(mockArtifact("d1-job-2.json", pipeline));
+        artifacts.add(mockArtifact("d1-job-2.dot", "digraph G {}"));
+        artifacts.add(mockArtifact("d1-job-2" + PipelineAnalysis.ARTIFACT_SUFFIX,
+                PipelineAnalysis.analyze(new PipelineObject(pipeline)).toJSONString()));
+        artifacts.add(mockArtifact("d1-job-2" + PipelineDiff.ARTIFACT_SUFFIX,
+                PipelineDiff.compare(new PipelineObject("{\"objects\":[]}"), new PipelineObject(pipeline), "d1-job-1.json")
+                        .toJSONString()));
+        artifacts.add(mockArtifact("d1-job-2" + BuildPhaseTimings.ARTIFACT_SUFFIX, new BuildPhaseTimings().toJSONString()));
+        artifacts.add(mockArtifact("broken.json", "{"));
+
+        DeploymentViewModel viewModel = DeploymentViewModel.create(artifacts);
+
+        assertEquals(Arrays.asList("d1-job-2.json"), viewModel.getPipelines());
+        assertEquals("2015-01-02T00:00:00", viewModel.getScheduleDate("d1-job-2.json"));
+        assertEquals("2015-01-02T00:00:00", viewModel.getScheduleDate(null));
+        assertEquals(1, viewModel.getAnalysis("d1-job-2.json").getActivityCount());
+        assertEquals(2, viewModel.getDiff("d1-job-2.json").getAddedCount());
+        assertEquals("", viewModel.getScheduleDate("missing.json"));
+    }
+
+    @Test
+    public void snapshotShouldNotReadArtifactsAgain() throws Exception {
+        Run.Artifact artifact = mockArtifact("d1-job-2.json", "{\"objects\":[]}");
+        DeploymentViewModel viewModel = DeploymentViewModel.create(Arrays.asList(artifact));
+        reset(artifact);
+
+        viewModel.getPipelines();
+        viewModel.getScheduleDate(null);
+        viewModel.getAnalysis("d1-job-2.json");
+
+        verifyZeroInteractions(artifact);
+    }
+
+    private Run.Artifact mockArtifact(String name, String content) throws Exception {
+        File file = testFolder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Run.Artifact artifact = mock(Run.Artifact.class);
+        when(artifact.getFileName()).thenReturn(name);
+        when(artifact.getFile()).thenReturn(file);
+        return artifact;
+    }
+}
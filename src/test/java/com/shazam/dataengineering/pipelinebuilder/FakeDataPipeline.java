@@ -0,0 +1,316 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.datapipeline.DataPipelineClient;
+import com.amazonaws.services.datapipeline.model.*;
+import com.amazonaws.services.datapipeline.model.PipelineObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory stand-in for AWS Data Pipeline, covering the calls made by {@link AWSProxy}.
+ * <p/>
+ * Follows the service where callers depend on it: ListPipelines and QueryObjects
+ * return one page at a time, DescribePipelines and DescribeObjects reject more
+ * than 25 ids, creating a pipeline is idempotent on its unique id, and removed
+ * pipelines can no longer be described. Latency and throttling are set through
+ * {@link #getConditions()}. Safe to share between threads.
+ */
+public class FakeDataPipeline extends DataPipelineClient {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_DESCRIBE_IDS = 25;
+
+    private final FakeServiceConditions conditions = new FakeServiceConditions("AWSDataPipeline", "ThrottlingException");
+    private final Map<String, Pipeline> pipelines = new LinkedHashMap<String, Pipeline>();
+    private final Set<String> deletedPipelines = new HashSet<String>();
+    private int listPipelinesPageSize = DEFAULT_PAGE_SIZE;
+    private int queryObjectsPageSize = DEFAULT_PAGE_SIZE;
+    private int nextId = 1;
+
+    public FakeDataPipeline() {
+        super(new BasicAWSCredentials("fake", "fake"));
+    }
+
+    public FakeServiceConditions getConditions() {
+        return conditions;
+    }
+
+    public void setListPipelinesPageSize(int pageSize) {
+        this.listPipelinesPageSize = pageSize;
+    }
+
+    public void setQueryObjectsPageSize(int pageSize) {
+        this.queryObjectsPageSize = pageSize;
+    }
+
+    /**
+     * Add attempts of the pipeline's activities, as found by querying the ATTEMPT sphere.
+     *
+     * @param status Status of the attempts, e.g. RUNNING or FINISHED
+     */
+    public void addAttempts(String pipelineId, String status, int count) {
+        synchronized (pipelines) {
+            Pipeline pipeline = getPipeline(pipelineId);
+            for (int i = 0; i < count; i++) {
+                pipeline.attempts.put("@attempt_" + pipeline.attempts.size(), status);
+            }
+        }
+    }
+
+    /**
+     * @return Ids of the pipelines that have not been deleted, oldest first
+     */
+    public List<String> getPipelineIds() {
+        synchronized (pipelines) {
+            return new ArrayList<String>(pipelines.keySet());
+        }
+    }
+
+    public String getPipelineName(String pipelineId) {
+        synchronized (pipelines) {
+            return getPipeline(pipelineId).name;
+        }
+    }
+
+    public String getPipelineState(String pipelineId) {
+        synchronized (pipelines) {
+            return getPipeline(pipelineId).state;
+        }
+    }
+
+    @Override
+    public CreatePipelineResult createPipeline(CreatePipelineRequest request) {
+        conditions.call(AWSMetrics.CREATE_PIPELINE);
+        synchronized (pipelines) {
+            for (Pipeline pipeline : pipelines.values()) {
+                // Retried requests get the pipeline created the first time
+                if (pipeline.uniqueId.equals(request.getUniqueId())) {
+                    return new CreatePipelineResult().withPipelineId(pipeline.id);
+                }
+            }
+            Pipeline pipeline = new Pipeline(String.format("df-%010d", nextId++), request.getName(), request.getUniqueId());
+            pipelines.put(pipeline.id, pipeline);
+            return new CreatePipelineResult().withPipelineId(pipeline.id);
+        }
+    }
+
+    @Override
+    public void deletePipeline(DeletePipelineRequest request) {
+        conditions.call(AWSMetrics.DELETE_PIPELINE);
+        synchronized (pipelines) {
+            getPipeline(request.getPipelineId());
+            pipelines.remove(request.getPipelineId());
+            deletedPipelines.add(request.getPipelineId());
+        }
+    }
+
+    @Override
+    public ValidatePipelineDefinitionResult validatePipelineDefinition(ValidatePipelineDefinitionRequest request) {
+        conditions.call(AWSMetrics.VALIDATE_PIPELINE_DEFINITION);
+        synchronized (pipelines) {
+            getPipeline(request.getPipelineId());
+        }
+        List<ValidationError> errors = validate(request.getPipelineObjects());
+        return new ValidatePipelineDefinitionResult()
+                .withErrored(!errors.isEmpty())
+                .withValidationErrors(errors)
+                .withValidationWarnings(new ArrayList<ValidationWarning>());
+    }
+
+    @Override
+    public PutPipelineDefinitionResult putPipelineDefinition(PutPipelineDefinitionRequest request) {
+        conditions.call(AWSMetrics.PUT_PIPELINE_DEFINITION);
+        List<ValidationError> errors = validate(request.getPipelineObjects());
+        synchronized (pipelines) {
+            Pipeline pipeline = getPipeline(request.getPipelineId());
+            if (errors.isEmpty()) {
+                pipeline.definition = new ArrayList<PipelineObject>(request.getPipelineObjects());
+            }
+        }
+        return new PutPipelineDefinitionResult()
+                .withErrored(!errors.isEmpty())
+                .withValidationErrors(errors)
+                .withValidationWarnings(new ArrayList<ValidationWarning>());
+    }
+
+    @Override
+    public ActivatePipelineResult activatePipeline(ActivatePipelineRequest request) {
+        conditions.call(AWSMetrics.ACTIVATE_PIPELINE);
+        synchronized (pipelines) {
+            Pipeline pipeline = getPipeline(request.getPipelineId());
+            if (pipeline.definition == null) {
+                throw new InvalidRequestException("Pipeline " + pipeline.id + " has no definition");
+            }
+            pipeline.state = "SCHEDULED";
+            return new ActivatePipelineResult();
+        }
+    }
+
+    @Override
+    public ListPipelinesResult listPipelines(ListPipelinesRequest request) {
+        conditions.call(AWSMetrics.LIST_PIPELINES);
+        ArrayList<PipelineIdName> idNames = new ArrayList<PipelineIdName>();
+        synchronized (pipelines) {
+            for (Pipeline pipeline : pipelines.values()) {
+                idNames.add(new PipelineIdName().withId(pipeline.id).withName(pipeline.name));
+            }
+        }
+        int start = getStart(request.getMarker());
+        int end = Math.min(start + listPipelinesPageSize, idNames.size());
+        return new ListPipelinesResult()
+                .withPipelineIdList(idNames.subList(Math.min(start, end), end))
+                .withHasMoreResults(end < idNames.size())
+                .withMarker(end < idNames.size() ? String.valueOf(end) : null);
+    }
+
+    @Override
+    public DescribePipelinesResult describePipelines(DescribePipelinesRequest request) {
+        conditions.call(AWSMetrics.DESCRIBE_PIPELINES);
+        checkIdCount(request.getPipelineIds());
+        ArrayList<PipelineDescription> descriptions = new ArrayList<PipelineDescription>();
+        synchronized (pipelines) {
+            for (String pipelineId : request.getPipelineIds()) {
+                Pipeline pipeline = getPipeline(pipelineId);
+                descriptions.add(new PipelineDescription()
+                        .withPipelineId(pipeline.id)
+                        .withName(pipeline.name)
+                        .withFields(
+                                new Field().withKey("name").withStringValue(pipeline.name),
+                                new Field().withKey("@pipelineState").withStringValue(pipeline.state),
+                                new Field().withKey("@healthStatus").withStringValue("HEALTHY")));
+            }
+        }
+        return new DescribePipelinesResult().withPipelineDescriptionList(descriptions);
+    }
+
+    @Override
+    public QueryObjectsResult queryObjects(QueryObjectsRequest request) {
+        conditions.call(AWSMetrics.QUERY_OBJECTS);
+        ArrayList<String> ids = new ArrayList<String>();
+        synchronized (pipelines) {
+            Pipeline pipeline = getPipeline(request.getPipelineId());
+            if ("ATTEMPT".equals(request.getSphere())) {
+                ids.addAll(pipeline.attempts.keySet());
+            } else if ("COMPONENT".equals(request.getSphere()) && pipeline.definition != null) {
+                for (PipelineObject object : pipeline.definition) {
+                    ids.add(object.getId());
+                }
+            }
+        }
+        int pageSize = request.getLimit() == null ? queryObjectsPageSize : Math.min(request.getLimit(), queryObjectsPageSize);
+        int start = getStart(request.getMarker());
+        int end = Math.min(start + pageSize, ids.size());
+        return new QueryObjectsResult()
+                .withIds(ids.subList(Math.min(start, end), end))
+                .withHasMoreResults(end < ids.size())
+                .withMarker(end < ids.size() ? String.valueOf(end) : null);
+    }
+
+    @Override
+    public DescribeObjectsResult describeObjects(DescribeObjectsRequest request) {
+        conditions.call(AWSMetrics.DESCRIBE_OBJECTS);
+        checkIdCount(request.getObjectIds());
+        ArrayList<PipelineObject> objects = new ArrayList<PipelineObject>();
+        synchronized (pipelines) {
+            Pipeline pipeline = getPipeline(request.getPipelineId());
+            HashMap<String, PipelineObject> components = new HashMap<String, PipelineObject>();
+            if (pipeline.definition != null) {
+                for (PipelineObject object : pipeline.definition) {
+                    components.put(object.getId(), object);
+                }
+            }
+            for (String id : request.getObjectIds()) {
+                if (pipeline.attempts.containsKey(id)) {
+                    objects.add(new PipelineObject().withId(id).withName(id).withFields(
+                            new Field().withKey("@status").withStringValue(pipeline.attempts.get(id))));
+                } else if (components.containsKey(id)) {
+                    objects.add(components.get(id));
+                }
+            }
+        }
+        return new DescribeObjectsResult().withPipelineObjects(objects).withHasMoreResults(false);
+    }
+
+    /**
+     * Must hold the lock on the pipelines.
+     */
+    private Pipeline getPipeline(String pipelineId) {
+        if (deletedPipelines.contains(pipelineId)) {
+            throw new PipelineDeletedException("Pipeline " + pipelineId + " has been deleted");
+        }
+        Pipeline pipeline = pipelines.get(pipelineId);
+        if (pipeline == null) {
+            throw new PipelineNotFoundException("Pipeline " + pipelineId + " does not exist");
+        }
+        return pipeline;
+    }
+
+    private static void checkIdCount(List<String> ids) {
+        if (ids == null || ids.isEmpty() || ids.size() > MAX_DESCRIBE_IDS) {
+            throw new InvalidRequestException(String.format(
+                    "Between 1 and %d ids are allowed, got %d", MAX_DESCRIBE_IDS, ids == null ? 0 : ids.size()));
+        }
+    }
+
+    private static int getStart(String marker) {
+        if (marker == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(marker);
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid marker " + marker);
+        }
+    }
+
+    private static List<ValidationError> validate(List<PipelineObject> objects) {
+        ArrayList<ValidationError> errors = new ArrayList<ValidationError>();
+        if (objects == null || objects.isEmpty()) {
+            errors.add(new ValidationError().withErrors("Pipeline definition has no objects"));
+            return errors;
+        }
+        for (PipelineObject object : objects) {
+            if (object.getId() == null || object.getId().isEmpty()) {
+                errors.add(new ValidationError().withErrors("Object is missing an id"));
+            }
+        }
+        return errors;
+    }
+
+    private static class Pipeline {
+        private final String id;
+        private final String name;
+        private final String uniqueId;
+        private final Map<String, String> attempts = new LinkedHashMap<String, String>();
+        private List<PipelineObject> definition;
+        private String state = "PENDING";
+
+        private Pipeline(String id, String name, String uniqueId) {
+            this.id = id;
+            this.name = name;
+            this.uniqueId = uniqueId == null ? id : uniqueId;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.services.datapipeline.model.CreatePipelineRequest;
+import com.amazonaws.services.datapipeline.model.DescribePipelinesRequest;
+import com.amazonaws.services.datapipeline.model.InvalidRequestException;
+import com.amazonaws.services.datapipeline.model.PipelineDescription;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FakeDataPipelineTest {
+    private FakeDataPipeline dataPipeline = new FakeDataPipeline();
+    private AWSProxy proxy = new AWSProxy(dataPipeline);
+
+    @Before
+    public void setUp() {
+        AWSMetrics.reset();
+    }
+
+    @Test
+    public void pipelineShouldBeFoundOnLaterPage() throws Exception {
+        dataPipeline.setListPipelinesPageSize(10);
+        for (int i = 0; i < 25; i++) {
+            proxy.createPipeline("d1-job-" + i);
+        }
+        String pipelineId = proxy.createPipeline("p1-job-7");
+
+        assertEquals(pipelineId, proxy.getPipelineId("p1-job-\\d+"));
+        assertEquals(3, dataPipeline.getConditions().getCallCount(AWSMetrics.LIST_PIPELINES));
+    }
+
+    @Test
+    public void describePipelinesShouldBeBatchedAndSkipDeletedPipelines() throws Exception {
+        ArrayList<String> pipelineIds = new ArrayList<String>();
+        for (int i = 0; i < 60; i++) {
+            pipelineIds.add(proxy.createPipeline("d1-job-" + i));
+        }
+        proxy.removePipeline(pipelineIds.get(30));
+
+        List<PipelineDescription> descriptions = proxy.describePipelines(pipelineIds);
+
+        assertEquals(59, descriptions.size());
+        // One request per batch of 25, and one per pipeline of the batch with the deleted pipeline
+        assertEquals(3 + 25, dataPipeline.getConditions().getCallCount(AWSMetrics.DESCRIBE_PIPELINES));
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void describingTooManyPipelinesShouldBeRejected() throws Exception {
+        ArrayList<String> pipelineIds = new ArrayList<String>();
+        for (int i = 0; i <= FakeDataPipeline.MAX_DESCRIBE_IDS; i++) {
+            pipelineIds.add("df-" + i);
+        }
+        dataPipeline.describePipelines(new DescribePipelinesRequest().withPipelineIds(pipelineIds));
+    }
+
+    @Test
+    public void runningAttemptShouldBeFoundAcrossPagesAndBatches() throws Exception {
+        String pipelineId = proxy.createPipeline("d1-job-1");
+        dataPipeline.addAttempts(pipelineId, "FINISHED", 130);
+        assertFalse(proxy.hasRunningTasks(pipelineId));
+
+        dataPipeline.addAttempts(pipelineId, "RUNNING", 1);
+        assertTrue(proxy.hasRunningTasks(pipelineId));
+    }
+
+    @Test
+    public void createPipelineShouldBeIdempotent() throws Exception {
+        CreatePipelineRequest request = new CreatePipelineRequest().withName("d1-job-1").withUniqueId("token");
+
+        String pipelineId = dataPipeline.createPipeline(request).getPipelineId();
+
+        assertEquals(pipelineId, dataPipeline.createPipeline(request).getPipelineId());
+        assertEquals(1, dataPipeline.getPipelineIds().size());
+    }
+
+    @Test
+    public void callsOverTheRateShouldBeThrottled() throws Exception {
+        dataPipeline.getConditions().setCallsPerSecond(2);
+        proxy.createPipeline("d1-job-1");
+        proxy.createPipeline("d1-job-2");
+
+        try {
+            proxy.createPipeline("d1-job-3");
+            fail("Expected the call to be throttled");
+        } catch (DeploymentException e) {
+            assertEquals(1, AWSMetrics.getCount(AWSMetrics.CREATE_PIPELINE, AWSMetrics.Outcome.THROTTLED));
+        }
+        assertEquals(3, dataPipeline.getConditions().getCallCount(AWSMetrics.CREATE_PIPELINE));
+    }
+
+    @Test
+    public void callsShouldBeDelayed() throws Exception {
+        dataPipeline.getConditions().setLatency(20, 30);
+
+        long start = System.nanoTime();
+        proxy.createPipeline("d1-job-1");
+
+        assertTrue(System.nanoTime() - start >= 20000000L);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory stand-in for S3, covering the uploads made by {@link AWSProxy}.
+ * <p/>
+ * Only the size of uploaded files is kept. Latency and throttling, which S3
+ * reports as SlowDown, are set through {@link #getConditions()}.
+ */
+public class FakeS3 extends AmazonS3Client {
+    private final FakeServiceConditions conditions = new FakeServiceConditions("Amazon S3", "SlowDown");
+    private final Map<String, Long> objects = new HashMap<String, Long>();
+
+    public FakeS3() {
+        super(new BasicAWSCredentials("fake", "fake"));
+    }
+
+    public FakeServiceConditions getConditions() {
+        return conditions;
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        conditions.call(AWSMetrics.S3_PUT_OBJECT);
+        if (request.getFile() == null || !request.getFile().isFile()) {
+            throw new AmazonClientException("Unable to read " + request.getFile());
+        }
+        synchronized (objects) {
+            objects.put(request.getBucketName() + "/" + request.getKey(), request.getFile().length());
+        }
+        return new PutObjectResult();
+    }
+
+    /**
+     * @return Size of the object in bytes, or -1 if it has not been uploaded
+     */
+    public long getObjectSize(String bucketName, String key) {
+        synchronized (objects) {
+            Long size = objects.get(bucketName + "/" + key);
+            return size == null ? -1 : size;
+        }
+    }
+
+    public int getObjectCount() {
+        synchronized (objects) {
+            return objects.size();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, throttling and call counting shared by the in-memory AWS stand-ins.
+ * <p/>
+ * Throttling is a token bucket: a service allows a number of calls per second,
+ * with bursts of up to that many calls, and fails the rest the way AWS does.
+ * Throttled calls still count, as they do against the real limits.
+ */
+public class FakeServiceConditions {
+    private final String serviceName;
+    private final String throttlingErrorCode;
+    private final Random random = new Random();
+    private final Map<String, AtomicLong> calls = Collections.synchronizedMap(new HashMap<String, AtomicLong>());
+
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private int callsPerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public FakeServiceConditions(String serviceName, String throttlingErrorCode) {
+        this.serviceName = serviceName;
+        this.throttlingErrorCode = throttlingErrorCode;
+    }
+
+    /**
+     * Delay every call by a random time between the bounds, inclusive.
+     */
+    public void setLatency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid latency range " + minMillis + "-" + maxMillis);
+        }
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+    }
+
+    /**
+     * @param callsPerSecond Calls allowed per second over all operations, or 0 for no limit
+     */
+    public synchronized void setCallsPerSecond(int callsPerSecond) {
+        this.callsPerSecond = callsPerSecond;
+        this.tokens = callsPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public long getCallCount(String operation) {
+        AtomicLong count = calls.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    public long getTotalCallCount() {
+        long total = 0;
+        synchronized (calls) {
+            for (AtomicLong count : calls.values()) {
+                total += count.get();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Count the call, wait for the simulated latency and throttle it if over the limit.
+     *
+     * @throws AmazonServiceException if the call is throttled
+     */
+    void call(String operation) {
+        AtomicLong count;
+        synchronized (calls) {
+            count = calls.get(operation);
+            if (count == null) {
+                count = new AtomicLong();
+                calls.put(operation, count);
+            }
+        }
+        count.incrementAndGet();
+
+        sleep();
+        if (!acquire()) {
+            AmazonServiceException e = new AmazonServiceException("Rate exceeded");
+            e.setServiceName(serviceName);
+            e.setErrorCode(throttlingErrorCode);
+            e.setStatusCode(400);
+            throw e;
+        }
+    }
+
+    private void sleep() {
+        long min = minLatencyMillis;
+        long max = maxLatencyMillis;
+        if (max == 0) {
+            return;
+        }
+        long millis;
+        synchronized (random) {
+            millis = min + (long) (random.nextDouble() * (max - min + 1));
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while waiting for " + serviceName);
+        }
+    }
+
+    private synchronized boolean acquire() {
+        if (callsPerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(callsPerSecond, tokens + (now - lastRefill) * callsPerSecond / 1e9);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
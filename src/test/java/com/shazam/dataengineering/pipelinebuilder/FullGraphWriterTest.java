@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.util.IOUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.StringWriter;
+
+import static junit.framework.Assert.*;
+
+public class FullGraphWriterTest {
+    @Test
+    public void everyTypeShouldGetACluster() throws Exception {
+        String json = IOUtils.toString(new FileInputStream(new File("src/test/resources/pipeline1.json")), "UTF-8");
+        String dot = write(new PipelineObject(json), FullGraphWriter.DEFAULT_FAN_OUT_LIMIT);
+
+        assertTrue(dot.startsWith("digraph pipeline {"));
+        assertTrue(dot.contains("label=\"Schedule (1)\""));
+        assertTrue(dot.contains("label=\"EmrCluster (1)\""));
+        assertTrue(dot.contains("label=\"SqlActivity (1)\""));
+        assertTrue(dot.contains("label=\"Default (1)\""));
+        assertTrue(dot.contains("[label=\"schedule\"]"));
+    }
+
+    @Test
+    public void largeFanInShouldBeCollapsed() throws Exception {
+        String dot = write(new PipelineObject(getFanInPipeline(50)), 10);
+
+        assertEquals(1, count(dot, "schedule (x50)"));
+        assertEquals(1, count(dot, "ltail=cluster_"));
+        assertEquals(0, count(dot, "[label=\"schedule\"]"));
+    }
+
+    @Test
+    public void smallFanInShouldNotBeCollapsed() throws Exception {
+        String dot = write(new PipelineObject(getFanInPipeline(5)), 10);
+
+        assertEquals(5, count(dot, "[label=\"schedule\"]"));
+        assertEquals(0, count(dot, "ltail="));
+    }
+
+    @Test
+    public void largeFanOutShouldBeCollapsed() throws Exception {
+        StringBuilder json = new StringBuilder("{\"objects\":[{\"id\":\"Alarm\",\"type\":\"SnsAlarm\",\"onFail\":[");
+        for (int i = 0; i < 20; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"ref\":\"Action").append(i).append("\"}");
+        }
+        json.append("]}");
+        for (int i = 0; i < 20; i++) {
+            json.append(",{\"id\":\"Action").append(i).append("\",\"type\":\"Terminate\"}");
+        }
+        json.append("]}");
+
+        String dot = write(new PipelineObject(json.toString()), 10);
+
+        assertEquals(1, count(dot, "onFail (x20)"));
+        assertEquals(1, count(dot, "lhead=cluster_"));
+    }
+
+    @Test
+    public void labelsShouldBeEscaped() throws Exception {
+        String json = "{\"objects\":[{\"id\":\"A\",\"name\":\"Say \\\"hi\\\"\",\"type\":\"ShellCommandActivity\"}]}";
+        String dot = write(new PipelineObject(json), 10);
+
+        assertTrue(dot.contains("Say \\\"hi\\\"\\nID: A"));
+    }
+
+    private String getFanInPipeline(int activities) {
+        StringBuilder json = new StringBuilder("{\"objects\":[{\"id\":\"Schedule\",\"type\":\"Schedule\"}");
+        for (int i = 0; i < activities; i++) {
+            json.append(",{\"id\":\"Activity").append(i)
+                    .append("\",\"type\":\"ShellCommandActivity\",\"schedule\":{\"ref\":\"Schedule\"}}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private String write(PipelineObject pipeline, int fanOutLimit) throws Exception {
+        StringWriter writer = new StringWriter();
+        new FullGraphWriter(fanOutLimit).writeDOT(writer, pipeline);
+        return writer.toString();
+    }
+
+    private int count(String text, String pattern) {
+        int count = 0;
+        for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static junit.framework.Assert.*;
+
+public class GraphLayoutTest {
+    @Test
+    public void edgesShouldPointDownwards() throws Exception {
+        GraphLayout layout = new GraphLayout();
+        int a = layout.addNode("A");
+        int b = layout.addNode("B");
+        int c = layout.addNode("C");
+        layout.addEdge(a, b, "input");
+        layout.addEdge(b, c, "output");
+        layout.addEdge(a, c, "");
+        layout.layout();
+
+        assertTrue(layout.getY(a) < layout.getY(b));
+        assertTrue(layout.getY(b) < layout.getY(c));
+    }
+
+    @Test
+    public void cyclesShouldBeLaidOut() throws Exception {
+        GraphLayout layout = new GraphLayout();
+        int a = layout.addNode("A");
+        int b = layout.addNode("B");
+        layout.addEdge(a, b, "");
+        layout.addEdge(b, a, "");
+        layout.addEdge(a, a, "self");
+        layout.layout();
+
+        assertTrue(layout.getY(a) != layout.getY(b));
+        for (int e = 0; e < layout.getEdgeCount(); e++) {
+            assertTrue(layout.getEdgePoints(e).length >= 4);
+        }
+    }
+
+    @Test
+    public void nodesInTheSameLayerShouldNotOverlap() throws Exception {
+        GraphLayout layout = new GraphLayout();
+        int root = layout.addNode("Root");
+        int[] children = new int[10];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = layout.addNode("Child number " + i + "\nEmrActivity");
+            layout.addEdge(root, children[i], "");
+        }
+        layout.layout();
+
+        for (int i = 0; i < children.length; i++) {
+            for (int j = i + 1; j < children.length; j++) {
+                double left = Math.min(layout.getX(children[i]), layout.getX(children[j]));
+                double right = Math.max(layout.getX(children[i]), layout.getX(children[j]));
+                double leftWidth = layout.getX(children[i]) < layout.getX(children[j])
+                        ? layout.getWidth(children[i]) : layout.getWidth(children[j]);
+                assertTrue(left + leftWidth <= right);
+            }
+        }
+        assertEquals((double) (2 * GraphLayout.LINE_HEIGHT + 2 * GraphLayout.PADDING), layout.getHeight(children[0]), 0.01);
+    }
+
+    @Test
+    public void largeGraphsShouldBeLaidOutQuickly() throws Exception {
+        GraphLayout layout = new GraphLayout();
+        int previous = layout.addNode("Node 0");
+        for (int i = 1; i < 500; i++) {
+            int node = layout.addNode("Node " + i);
+            layout.addEdge(previous, node, "");
+            if (i > 10) {
+                layout.addEdge(node - 10, node, "");
+            }
+            previous = node;
+        }
+
+        long start = System.currentTimeMillis();
+        layout.layout();
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test
+    public void svgShouldContainNodesAndEdges() throws Exception {
+        GraphLayout layout = new GraphLayout();
+        int a = layout.addNode("A & B");
+        int b = layout.addNode("<C>");
+        layout.addEdge(a, b, "ref");
+        layout.layout();
+
+        StringWriter writer = new StringWriter();
+        new GraphRenderer(layout).writeSVG(writer);
+        String svg = writer.toString();
+
+        assertTrue(svg.startsWith("<svg"));
+        assertEquals(2, svg.split("<rect").length - 1);
+        assertTrue(svg.contains("<polyline"));
+        assertTrue(svg.contains("A &amp; B"));
+        assertTrue(svg.contains("&lt;C&gt;"));
+    }
+}
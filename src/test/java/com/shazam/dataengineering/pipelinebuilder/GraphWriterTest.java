@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import com.amazonaws.services.datapipeline.model.Field;
+import hudson.util.IOUtils;
+import org.jgrapht.ext.DOTExporter;
+import org.jgrapht.ext.EdgeNameProvider;
+import org.jgrapht.ext.IntegerNameProvider;
+import org.jgrapht.ext.VertexNameProvider;
+import org.jgrapht.graph.ClassBasedEdgeFactory;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DirectedMultigraph;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Set;
+
+import static junit.framework.Assert.*;
+
+public class GraphWriterTest {
+    private static final String NL = System.getProperty("line.separator");
+
+    @Test
+    public void activitiesShouldBeNumberedInDefinitionOrder() throws Exception {
+        String json = "{\"objects\":["
+                + "{\"id\":\"Default\",\"name\":\"Default\",\"schedule\":{\"ref\":\"S\"}},"
+                + "{\"id\":\"S\",\"name\":\"Schedule\",\"type\":\"Schedule\"},"
+                + "{\"id\":\"B\",\"name\":\"Second \\\"step\\\"\",\"type\":\"SqlActivity\",\"dependsOn\":{\"ref\":\"A\"},\"schedule\":{\"ref\":\"S\"}},"
+                + "{\"id\":\"A\",\"name\":\"First\",\"type\":\"ShellCommandActivity\"}"
+                + "]}";
+
+        String expected = "digraph G {" + NL
+                + "  1 [ label=\"Second 'step'\nID: B\nType: SqlActivity\" ];" + NL
+                + "  2 [ label=\"First\nID: A\nType: ShellCommandActivity\" ];" + NL
+                + "  1 -> 2 [ label=\"dependsOn\" ];" + NL
+                + "}" + NL;
+
+        assertEquals(expected, writeDOT(new PipelineObject(json)));
+    }
+
+    @Test
+    public void repeatedReferencesShouldBeDrawnOnce() throws Exception {
+        String json = "{\"objects\":["
+                + "{\"id\":\"A\",\"name\":\"A\",\"type\":\"SqlActivity\",\"dependsOn\":[{\"ref\":\"B\"},{\"ref\":\"B\"}]},"
+                + "{\"id\":\"B\",\"name\":\"B\",\"type\":\"SqlActivity\"}"
+                + "]}";
+
+        String dot = writeDOT(new PipelineObject(json));
+
+        assertEquals(1, dot.split("1 -> 2").length - 1);
+    }
+
+    @Test
+    public void outputShouldMatchJgraphtExporter() throws Exception {
+        for (String file : new String[]{"pipeline1.json", "pipeline2.json", "pipeline3.json"}) {
+            String json = IOUtils.toString(new FileInputStream(new File("src/test/resources/" + file)), "UTF-8");
+            PipelineObject pipeline = new PipelineObject(json);
+
+            assertEquals(file, writeJgraphtDOT(pipeline), writeDOT(pipeline));
+        }
+    }
+
+    @Test
+    public void layoutShouldContainTheSameGraph() throws Exception {
+        String json = IOUtils.toString(new FileInputStream(new File("src/test/resources/pipeline1.json")), "UTF-8");
+        GraphLayout layout = new GraphWriter().getLayout(new PipelineObject(json));
+
+        assertEquals(2, layout.getNodeCount());
+        assertEquals(1, layout.getEdgeCount());
+    }
+
+    private String writeDOT(PipelineObject pipeline) {
+        StringWriter writer = new StringWriter();
+        new GraphWriter().writeDOT(writer, pipeline);
+        return writer.toString();
+    }
+
+    /**
+     * Reference implementation, as GraphWriter used to build it.
+     */
+    @SuppressWarnings("unchecked")
+    private String writeJgraphtDOT(PipelineObject pipeline) {
+        DirectedMultigraph graph = new DirectedMultigraph<com.amazonaws.services.datapipeline.model.PipelineObject, Edge>(
+                new ClassBasedEdgeFactory<com.amazonaws.services.datapipeline.model.PipelineObject, Edge>(Edge.class));
+        HashMap<String, com.amazonaws.services.datapipeline.model.PipelineObject> idToPipeline =
+                new HashMap<String, com.amazonaws.services.datapipeline.model.PipelineObject>();
+
+        for (com.amazonaws.services.datapipeline.model.PipelineObject awsObject : pipeline.getAWSObjects()) {
+            if (!awsObject.getId().equals("Default")) {
+                for (Field field : awsObject.getFields()) {
+                    if (field.getKey().equals("type") && field.getStringValue().contains("Activity")) {
+                        idToPipeline.put(awsObject.getId(), awsObject);
+                        graph.addVertex(awsObject);
+                    }
+                }
+            }
+        }
+        for (com.amazonaws.services.datapipeline.model.PipelineObject awsObject :
+                (Set<com.amazonaws.services.datapipeline.model.PipelineObject>) graph.vertexSet()) {
+            for (Field field : awsObject.getFields()) {
+                if (field.getRefValue() != null && idToPipeline.containsKey(field.getRefValue())) {
+                    graph.addEdge(awsObject, idToPipeline.get(field.getRefValue()),
+                            new Edge(field.getKey()));
+                }
+            }
+        }
+
+        DOTExporter dot = new DOTExporter(
+                new IntegerNameProvider(),
+                new VertexNameProvider<com.amazonaws.services.datapipeline.model.PipelineObject>() {
+                    public String getVertexName(com.amazonaws.services.datapipeline.model.PipelineObject object) {
+                        String label = object.getName() + "\nID: " + object.getId();
+                        for (Field field : object.getFields()) {
+                            if (field.getKey().equals("type")) {
+                                label += "\nType: " + field.getStringValue();
+                            }
+                        }
+                        return label.replaceAll("\"", "\'");
+                    }
+                },
+                new EdgeNameProvider<Edge>() {
+                    public String getEdgeName(Edge edge) {
+                        return edge.toString().replaceAll("\"", "\'");
+                    }
+                }
+        );
+        StringWriter writer = new StringWriter();
+        dot.export(writer, graph);
+        return writer.toString();
+    }
+
+    public static class Edge extends DefaultEdge {
+        private String label;
+
+        public Edge(String label) {
+            this.label = label;
+        }
+
+        public String toString() {
+            return label;
+        }
+    }
+}
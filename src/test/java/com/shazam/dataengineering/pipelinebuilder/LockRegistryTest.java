@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class LockRegistryTest {
+    @Test
+    public void lockShouldBeReleasedFromRegistryWhenUnused() throws Exception {
+        LockRegistry registry = new LockRegistry();
+
+        registry.lock("a");
+        registry.lock("a");
+        registry.lock("b");
+        assertEquals(2, registry.size());
+
+        registry.unlock("a");
+        registry.unlock("b");
+        assertEquals(1, registry.size());
+
+        registry.unlock("a");
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void sameKeyShouldBlockOtherThreads() throws Exception {
+        final LockRegistry registry = new LockRegistry();
+        final AtomicBoolean acquired = new AtomicBoolean(false);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        registry.lock("pipeline");
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                registry.lock("pipeline");
+                acquired.set(true);
+                registry.unlock("pipeline");
+                done.countDown();
+            }
+        });
+        thread.start();
+
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(acquired.get());
+
+        registry.unlock("pipeline");
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(acquired.get());
+        assertEquals(1, registry.getContendedCount());
+        assertTrue(registry.getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void differentKeysShouldNotBlock() throws Exception {
+        final LockRegistry registry = new LockRegistry();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        registry.lock("pipeline1");
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                registry.lock("pipeline2");
+                registry.unlock("pipeline2");
+                done.countDown();
+            }
+        });
+        thread.start();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        registry.unlock("pipeline1");
+        assertEquals(0, registry.getContendedCount());
+    }
+
+    @Test
+    public void tryLockShouldGiveUpAfterTimeout() throws Exception {
+        final LockRegistry registry = new LockRegistry();
+        final AtomicBoolean acquired = new AtomicBoolean(true);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        registry.lock("pipeline");
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    acquired.set(registry.tryLock("pipeline", 100, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        });
+        thread.start();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(acquired.get());
+        assertEquals(1, registry.size());
+
+        registry.unlock("pipeline");
+        assertEquals(0, registry.size());
+        assertTrue(registry.tryLock("pipeline", 100, TimeUnit.MILLISECONDS));
+        registry.unlock("pipeline");
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void unlockingUnknownKeyShouldFail() throws Exception {
+        new LockRegistry().unlock("missing");
+    }
+}
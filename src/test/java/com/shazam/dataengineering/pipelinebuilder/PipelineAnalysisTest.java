@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class PipelineAnalysisTest {
+    @Test
+    public void criticalPathShouldFollowTheLongestChain() throws Exception {
+        // A <- B <- C <- D, and A <- E <- D
+        String json = "{\"objects\":["
+                + activity("D", "C", "E") + ","
+                + activity("C", "B") + ","
+                + activity("B", "A") + ","
+                + activity("E", "A") + ","
+                + activity("A")
+                + "]}";
+        PipelineAnalysis analysis = PipelineAnalysis.analyze(new PipelineObject(json));
+
+        assertFalse(analysis.hasCycles());
+        assertEquals(5, analysis.getActivityCount());
+        assertEquals(3, analysis.getMaxDepth());
+        assertEquals(Arrays.asList("A", "B", "C", "D"), analysis.getCriticalPath());
+        assertEquals("A", analysis.getMostDependedOn());
+    }
+
+    @Test
+    public void cyclesShouldBeReported() throws Exception {
+        String json = "{\"objects\":["
+                + activity("A", "B") + ","
+                + activity("B", "C") + ","
+                + activity("C", "A") + ","
+                + activity("D", "A") + ","
+                + activity("E", "E") + ","
+                + activity("F")
+                + "]}";
+        PipelineAnalysis analysis = PipelineAnalysis.analyze(new PipelineObject(json));
+
+        assertTrue(analysis.hasCycles());
+        assertEquals(2, analysis.getCycles().size());
+        assertEquals(Arrays.asList("A", "B", "C", "A"), analysis.getCycles().get(0));
+        assertEquals(Arrays.asList("E", "E"), analysis.getCycles().get(1));
+        assertEquals(Arrays.asList("F"), analysis.getCriticalPath());
+    }
+
+    @Test
+    public void cyclesShouldFailValidation() throws Exception {
+        String json = "{\"objects\":[" + activity("A", "B") + "," + activity("B", "A") + "]}";
+        List<String> errors = new PipelineValidator().validate(new PipelineObject(json));
+
+        assertEquals(1, errors.size());
+        assertEquals("Activities form a dependsOn cycle: A -> B -> A", errors.get(0));
+    }
+
+    @Test
+    public void analysisShouldSurviveJsonRoundTrip() throws Exception {
+        String json = "{\"objects\":[" + activity("A") + "," + activity("B", "A") + "]}";
+        PipelineAnalysis analysis = PipelineAnalysis.fromJSON(
+                PipelineAnalysis.analyze(new PipelineObject(json)).toJSONString());
+
+        assertEquals(2, analysis.getActivityCount());
+        assertEquals(1, analysis.getMaxDepth());
+        assertEquals(Arrays.asList("A", "B"), analysis.getCriticalPath());
+        assertFalse(analysis.hasCycles());
+    }
+
+    @Test
+    public void longChainsShouldBeAnalysedInLinearTime() throws Exception {
+        StringBuilder json = new StringBuilder("{\"objects\":[").append(activity("A0"));
+        for (int i = 1; i < 20000; i++) {
+            json.append(",").append(activity("A" + i, "A" + (i - 1)));
+        }
+        json.append("]}");
+        PipelineObject pipeline = new PipelineObject(json.toString());
+
+        long start = System.currentTimeMillis();
+        PipelineAnalysis analysis = PipelineAnalysis.analyze(pipeline);
+
+        assertEquals(19999, analysis.getMaxDepth());
+        assertEquals(20000, analysis.getCriticalPath().size());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    private String activity(String id, String... dependencies) {
+        StringBuilder json = new StringBuilder("{\"id\":\"").append(id)
+                .append("\",\"name\":\"").append(id).append("\",\"type\":\"ShellCommandActivity\"");
+        if (dependencies.length > 0) {
+            json.append(",\"dependsOn\":[");
+            for (int i = 0; i < dependencies.length; i++) {
+                json.append(i == 0 ? "" : ",").append("{\"ref\":\"").append(dependencies[i]).append("\"}");
+            }
+            json.append("]");
+        }
+        return json.append("}").toString();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.util.IOUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+
+import static junit.framework.Assert.*;
+
+public class PipelineDiffTest {
+    @Test
+    public void identicalPipelinesShouldHaveNoChanges() throws Exception {
+        String json = IOUtils.toString(new FileInputStream(new File("src/test/resources/pipeline1.json")), "UTF-8");
+        PipelineDiff diff = PipelineDiff.compare(new PipelineObject(json), new PipelineObject(json), "previous.json");
+
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void changesShouldBeReportedByObjectAndField() throws Exception {
+        String previous = "{\"objects\":["
+                + "{\"id\":\"A\",\"type\":\"SqlActivity\",\"script\":\"select 1\",\"retries\":\"3\"},"
+                + "{\"id\":\"B\",\"type\":\"SqlActivity\"},"
+                + "{\"id\":\"C\",\"type\":\"Schedule\",\"period\":\"1 day\"}"
+                + "]}";
+        String current = "{\"objects\":["
+                + "{\"id\":\"D\",\"type\":\"SnsAlarm\"},"
+                + "{\"id\":\"A\",\"type\":\"SqlActivity\",\"script\":\"select 2\",\"onFail\":{\"ref\":\"D\"}},"
+                + "{\"period\":\"1 day\",\"type\":\"Schedule\",\"id\":\"C\"}"
+                + "]}";
+
+        PipelineDiff diff = PipelineDiff.compare(new PipelineObject(previous), new PipelineObject(current), "p1.json");
+
+        assertEquals(3, diff.getChanges().size());
+        assertEquals(1, diff.getAddedCount());
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(1, diff.getModifiedCount());
+
+        PipelineDiff.Change added = diff.getChanges().get(0);
+        assertEquals(PipelineDiff.ChangeType.ADDED, added.getType());
+        assertEquals("D", added.getObjectId());
+
+        PipelineDiff.Change modified = diff.getChanges().get(1);
+        assertEquals("A", modified.getObjectId());
+        assertEquals(Arrays.asList("onFail"), modified.getAddedFields());
+        assertEquals(Arrays.asList("retries"), modified.getRemovedFields());
+        assertEquals(Arrays.asList("script"), modified.getModifiedFields());
+
+        PipelineDiff.Change removed = diff.getChanges().get(2);
+        assertEquals(PipelineDiff.ChangeType.REMOVED, removed.getType());
+        assertEquals("B", removed.getObjectId());
+    }
+
+    @Test
+    public void scriptUrlsShouldBeComparedWithoutTheirBuild() throws Exception {
+        String previous = "{\"objects\":["
+                + "{\"id\":\"A\",\"scriptUri\":\"s3://bucket/d1-job-5/a.sql\"},"
+                + "{\"id\":\"B\",\"scriptUri\":\"s3://bucket/d1-job-5/b.sql\",\"retries\":\"3\"}"
+                + "]}";
+        String current = "{\"objects\":["
+                + "{\"id\":\"A\",\"scriptUri\":\"s3://bucket/d1-job-7/a.sql\"},"
+                + "{\"id\":\"B\",\"scriptUri\":\"s3://bucket/d1-job-7/c.sql\",\"retries\":\"3\"}"
+                + "]}";
+
+        PipelineDiff diff = PipelineDiff.compare(new PipelineObject(previous), new PipelineObject(current),
+                "d1-job-5.json", "d1-job-7.json");
+
+        assertEquals(1, diff.getChanges().size());
+        assertEquals("B", diff.getChanges().get(0).getObjectId());
+        assertEquals(Arrays.asList("scriptUri"), diff.getChanges().get(0).getModifiedFields());
+    }
+
+    @Test
+    public void diffShouldSurviveJsonRoundTrip() throws Exception {
+        String previous = "{\"objects\":[{\"id\":\"A\",\"x\":\"1\"},{\"id\":\"B\"}]}";
+        String current = "{\"objects\":[{\"id\":\"A\",\"x\":\"2\"},{\"id\":\"C\"}]}";
+        PipelineDiff diff = PipelineDiff.fromJSON(PipelineDiff.compare(
+                new PipelineObject(previous), new PipelineObject(current), "p1.json").toJSONString());
+
+        assertEquals("p1.json", diff.getPreviousPipeline());
+        assertEquals(3, diff.getChanges().size());
+        assertEquals(Arrays.asList("x"), diff.getChanges().get(0).getModifiedFields());
+        assertEquals(PipelineDiff.ChangeType.ADDED, diff.getChanges().get(1).getType());
+        assertEquals(PipelineDiff.ChangeType.REMOVED, diff.getChanges().get(2).getType());
+    }
+}
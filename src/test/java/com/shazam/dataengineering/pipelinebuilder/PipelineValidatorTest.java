@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import hudson.util.IOUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+public class PipelineValidatorTest {
+    @Test
+    public void pipeline1ShouldPassValidation() throws Exception {
+        String json = IOUtils.toString(new FileInputStream(new File("src/test/resources/pipeline1.json")), "UTF-8");
+        List<String> errors = new PipelineValidator().validate(new PipelineObject(json));
+
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void pipeline3ShouldReportDanglingReferences() throws Exception {
+        String json = IOUtils.toString(new FileInputStream(new File("src/test/resources/pipeline3.json")), "UTF-8");
+        List<String> errors = new PipelineValidator().validate(new PipelineObject(json));
+
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0).contains("Ec2Resource_678"));
+        assertTrue(errors.get(1).contains("Ec2Resource_678"));
+    }
+
+    @Test
+    public void duplicateIdsShouldBeReported() throws Exception {
+        String json = "{\"objects\":[{\"id\":\"A\",\"type\":\"SnsAlarm\"},{\"id\":\"A\",\"type\":\"SnsAlarm\"}]}";
+        List<String> errors = new PipelineValidator().validate(new PipelineObject(json));
+
+        assertEquals(1, errors.size());
+        assertEquals("Duplicate object id: A", errors.get(0));
+    }
+
+    @Test
+    public void missingTypeShouldBeReportedExceptForDefault() throws Exception {
+        String json = "{\"objects\":[{\"id\":\"Default\"},{\"id\":\"A\"}]}";
+        List<String> errors = new PipelineValidator().validate(new PipelineObject(json));
+
+        assertEquals(1, errors.size());
+        assertEquals("Object A has no type", errors.get(0));
+    }
+
+    @Test
+    public void invalidStartDateShouldBeReported() throws Exception {
+        String json = "{\"objects\":[{\"id\":\"S\",\"type\":\"Schedule\",\"startDateTime\":\"2014-07/26\"}]}";
+        List<String> errors = new PipelineValidator().validate(new PipelineObject(json));
+
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).contains("startDateTime"));
+    }
+
+    @Test
+    public void invalidJsonShouldBeReported() throws Exception {
+        List<String> errors = new PipelineValidator().validate(new PipelineObject("{\"objects\":"));
+
+        assertEquals(1, errors.size());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License
+ */
+package com.shazam.dataengineering.pipelinebuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RunningTaskCheckTest {
+    private List<Runnable> tasks = new ArrayList<Runnable>();
+    private RunningTaskCheck check = new RunningTaskCheck(new Executor() {
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+    });
+
+    @Test
+    public void checkShouldBePendingUntilFinished() throws Exception {
+        AWSProxy proxy = mock(AWSProxy.class);
+        when(proxy.hasRunningTasks("df-1")).thenReturn(true);
+
+        assertEquals(RunningTaskCheck.Status.UNKNOWN, check.getStatus("df-1"));
+        check.start("df-1", proxy);
+        assertEquals(RunningTaskCheck.Status.PENDING, check.getStatus("df-1"));
+        verifyZeroInteractions(proxy);
+
+        tasks.get(0).run();
+        assertEquals(RunningTaskCheck.Status.RUNNING, check.getStatus("df-1"));
+    }
+
+    @Test
+    public void checkShouldNotBeRepeatedWhileFresh() throws Exception {
+        AWSProxy proxy = mock(AWSProxy.class);
+        when(proxy.hasRunningTasks("df-1")).thenReturn(false);
+
+        check.start("df-1", proxy);
+        check.start("df-1", proxy);
+        tasks.get(0).run();
+        check.start("df-1", proxy);
+
+        assertEquals(1, tasks.size());
+        assertEquals(RunningTaskCheck.Status.NOT_RUNNING, check.getStatus("df-1"));
+        verify(proxy, times(1)).hasRunningTasks("df-1");
+    }
+
+    @Test
+    public void failedCheckShouldBeUnknown() throws Exception {
+        AWSProxy proxy = mock(AWSProxy.class);
+        when(proxy.hasRunningTasks("df-1")).thenThrow(new RuntimeException("Rate exceeded"));
+
+        check.start("df-1", proxy);
+        tasks.get(0).run();
+
+        assertEquals(RunningTaskCheck.Status.UNKNOWN, check.getStatus("df-1"));
+    }
+}